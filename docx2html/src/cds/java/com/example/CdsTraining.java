@@ -0,0 +1,69 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Training run for the class-data-sharing archive the distribution ships. Every
+ * {@code .md} in the corpus goes to DOCX with each {@link DocxEngine}, and every
+ * resulting or bundled {@code .docx} back to Markdown with each
+ * {@link MarkdownEngine}, through the same entry points the start scripts call.
+ * Run under {@code -XX:DumpLoadedClassList}, this lists the classes a short
+ * conversion loads in either direction.
+ */
+public class CdsTraining {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: java -XX:DumpLoadedClassList=<file> -cp <jar>:<cds classes>:<deps> com.example.CdsTraining <corpus-dir> <work-dir>");
+			return;
+		}
+		Path corpus = Paths.get(args[0]).toAbsolutePath().normalize();
+		Path work = Paths.get(args[1]).toAbsolutePath().normalize();
+		Files.createDirectories(work);
+
+		List<Path> docx = new ArrayList<>();
+		for (Path md : list(corpus, ".md")) {
+			for (DocxEngine engine : DocxEngine.values()) {
+				Path out = work.resolve(stem(md) + "-" + engine.name().toLowerCase(Locale.ROOT) + ".docx");
+				train(MdToDocxApp.run(new String[] {md.toString(), out.toString(), engine.name()}), md);
+				docx.add(out);
+			}
+		}
+		docx.addAll(list(corpus, ".docx"));
+		for (Path in : docx) {
+			for (MarkdownEngine engine : MarkdownEngine.values()) {
+				Path out = work.resolve(stem(in) + "-" + engine.name().toLowerCase(Locale.ROOT) + ".md");
+				train(DocxToHtmlApp.run(new String[] {in.toString(), out.toString(), engine.name()}), in);
+			}
+		}
+	}
+
+	/** A failed conversion would leave its classes out of the archive, so it fails the build. */
+	private static void train(int status, Path input) {
+		if (status != 0) {
+			throw new IllegalStateException("Training conversion failed: " + input);
+		}
+	}
+
+	private static List<Path> list(Path dir, String extension) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files
+				.filter(p -> p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(extension))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+	}
+
+	private static String stem(Path file) {
+		String name = file.getFileName().toString();
+		return name.substring(0, name.lastIndexOf('.'));
+	}
+}
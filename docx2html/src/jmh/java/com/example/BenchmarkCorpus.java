@@ -0,0 +1,251 @@
+package com.example;
+
+import org.apache.poi.util.Units;
+import org.apache.poi.xwpf.usermodel.Document;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFStyle;
+import org.apache.poi.xwpf.usermodel.XWPFStyles;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTStyle;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTblGrid;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STStyleType;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deterministic documents for the benchmarks, generated on first use and kept
+ * in memory for the rest of the fork. Run {@link #main} to write them to a
+ * directory, e.g. to feed {@link BatchConvertApp}.
+ */
+final class BenchmarkCorpus {
+
+	/** DOCX shapes: a one-page memo, ~500 pages of prose, many tables, many pictures. */
+	static final String MEMO = "memo";
+	static final String TEXT_500_PAGES = "text500";
+	static final String TABLE_HEAVY = "tables";
+	static final String IMAGE_HEAVY = "images";
+
+	/** Markdown shapes besides {@link #MEMO} and {@link #TEXT_500_PAGES}: deeply nested lists. */
+	static final String NESTED_LISTS = "lists";
+
+	private static final String[] WORDS = ("lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod tempor "
+		+ "incididunt ut labore et dolore magna aliqua enim ad minim veniam quis nostrud exercitation ullamco laboris "
+		+ "nisi aliquip ex ea commodo consequat duis aute irure in reprehenderit voluptate velit esse cillum").split(" ");
+
+	private static final Map<String, byte[]> DOCX = new ConcurrentHashMap<>();
+	private static final Map<String, String> MARKDOWN = new ConcurrentHashMap<>();
+
+	private BenchmarkCorpus() {
+	}
+
+	static byte[] docx(String kind) {
+		return DOCX.computeIfAbsent(kind, k -> {
+			try {
+				return generateDocx(k);
+			} catch (Exception e) {
+				throw new IllegalStateException("Could not generate " + k, e);
+			}
+		});
+	}
+
+	static String markdown(String kind) {
+		return MARKDOWN.computeIfAbsent(kind, BenchmarkCorpus::generateMarkdown);
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path dir = Paths.get(args.length > 0 ? args[0] : "build/jmh-corpus");
+		Files.createDirectories(dir);
+		for (String kind : new String[]{MEMO, TEXT_500_PAGES, TABLE_HEAVY, IMAGE_HEAVY}) {
+			Files.write(dir.resolve(kind + ".docx"), docx(kind));
+		}
+		for (String kind : new String[]{MEMO, TEXT_500_PAGES, NESTED_LISTS}) {
+			Files.write(dir.resolve(kind + ".md"), markdown(kind).getBytes(StandardCharsets.UTF_8));
+		}
+		System.out.println("Corpus written to " + dir.toAbsolutePath());
+	}
+
+	private static byte[] generateDocx(String kind) throws Exception {
+		Random random = new Random(kind.hashCode());
+		try (XWPFDocument doc = new XWPFDocument()) {
+			addHeadingStyles(doc);
+			switch (kind) {
+				case MEMO:
+					heading(doc, 1, "Memo");
+					for (int i = 0; i < 6; i++) {
+						paragraph(doc, random, 60);
+					}
+					break;
+				case TEXT_500_PAGES:
+					// Roughly nine 80-word paragraphs per page
+					for (int page = 0; page < 500; page++) {
+						if (page % 10 == 0) {
+							heading(doc, 1 + (page / 10) % 3, "Chapter " + (page / 10 + 1));
+						}
+						for (int i = 0; i < 9; i++) {
+							paragraph(doc, random, 80);
+						}
+					}
+					break;
+				case TABLE_HEAVY:
+					for (int t = 0; t < 300; t++) {
+						heading(doc, 2, "Table " + (t + 1));
+						table(doc, random, 10, 5);
+						paragraph(doc, random, 20);
+					}
+					break;
+				case IMAGE_HEAVY:
+					byte[][] pictures = new byte[40][];
+					for (int i = 0; i < pictures.length; i++) {
+						pictures[i] = png(random, 800, 600);
+					}
+					for (int i = 0; i < 120; i++) {
+						paragraph(doc, random, 30);
+						// A third of the references reuse an earlier picture, like logos and icons do
+						byte[] png = pictures[i % pictures.length];
+						doc.createParagraph().createRun().addPicture(new ByteArrayInputStream(png), Document.PICTURE_TYPE_PNG,
+							"image" + i + ".png", Units.toEMU(400), Units.toEMU(300));
+					}
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown corpus kind: " + kind);
+			}
+			// XHTMLConverter needs a section
+			doc.getDocument().getBody().addNewSectPr();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			doc.write(out);
+			return out.toByteArray();
+		}
+	}
+
+	private static void addHeadingStyles(XWPFDocument doc) {
+		XWPFStyles styles = doc.createStyles();
+		for (int level = 1; level <= 3; level++) {
+			CTStyle style = CTStyle.Factory.newInstance();
+			style.setStyleId("Heading" + level);
+			style.addNewName().setVal("heading " + level);
+			style.setType(STStyleType.PARAGRAPH);
+			styles.addStyle(new XWPFStyle(style));
+		}
+	}
+
+	private static void heading(XWPFDocument doc, int level, String text) {
+		XWPFParagraph p = doc.createParagraph();
+		p.setStyle("Heading" + level);
+		p.createRun().setText(text);
+	}
+
+	private static void paragraph(XWPFDocument doc, Random random, int words) {
+		XWPFParagraph p = doc.createParagraph();
+		int written = 0;
+		while (written < words) {
+			int n = Math.min(words - written, 3 + random.nextInt(12));
+			XWPFRun run = p.createRun();
+			int style = random.nextInt(10);
+			run.setBold(style == 0);
+			run.setItalic(style == 1);
+			run.setText(words(random, n) + " ");
+			written += n;
+		}
+	}
+
+	private static void table(XWPFDocument doc, Random random, int rows, int cols) {
+		XWPFTable table = doc.createTable(rows, cols);
+		CTTblGrid grid = table.getCTTbl().addNewTblGrid();
+		for (int c = 0; c < cols; c++) {
+			grid.addNewGridCol().setW(BigInteger.valueOf(1200 + 300 * c));
+		}
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				table.getRow(r).getCell(c).setText(words(random, 1 + random.nextInt(6)));
+			}
+		}
+	}
+
+	private static byte[] png(Random random, int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int base = random.nextInt(0xFFFFFF);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				// Gradient plus noise so PNG cannot compress it to nothing
+				image.setRGB(x, y, (base + x * 0x101 + y * 0x10000 + random.nextInt(16)) & 0xFFFFFF);
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	private static String generateMarkdown(String kind) {
+		Random random = new Random(kind.hashCode());
+		StringBuilder md = new StringBuilder();
+		switch (kind) {
+			case MEMO:
+				md.append("# Memo\n\n");
+				for (int i = 0; i < 6; i++) {
+					md.append(markdownParagraph(random, 60)).append("\n\n");
+				}
+				md.append("- first point\n- second point\n    - detail\n\n1. one\n2. two\n");
+				break;
+			case TEXT_500_PAGES:
+				for (int page = 0; page < 500; page++) {
+					if (page % 10 == 0) {
+						md.append("#".repeat(1 + (page / 10) % 3)).append(" Chapter ").append(page / 10 + 1).append("\n\n");
+					}
+					for (int i = 0; i < 9; i++) {
+						md.append(markdownParagraph(random, 80)).append("\n\n");
+					}
+				}
+				break;
+			case NESTED_LISTS:
+				for (int block = 0; block < 200; block++) {
+					md.append("## List ").append(block + 1).append("\n\n");
+					for (int item = 0; item < 10; item++) {
+						int depth = random.nextInt(4);
+						md.append("    ".repeat(depth)).append(random.nextBoolean() ? "- " : "1. ")
+							.append(words(random, 4 + random.nextInt(8))).append('\n');
+					}
+					md.append('\n');
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown corpus kind: " + kind);
+		}
+		return md.toString();
+	}
+
+	private static String markdownParagraph(Random random, int words) {
+		StringBuilder sb = new StringBuilder();
+		int written = 0;
+		while (written < words) {
+			int n = Math.min(words - written, 3 + random.nextInt(12));
+			String text = words(random, n);
+			int style = random.nextInt(10);
+			sb.append(style == 0 ? "**" + text + "**" : style == 1 ? "*" + text + "*" : text).append(' ');
+			written += n;
+		}
+		return sb.toString().trim();
+	}
+
+	private static String words(Random random, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			if (i > 0) sb.append(' ');
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,76 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end conversions through one long-lived converter per direction, the
+ * way the batch mode and the daemon use them. Output is discarded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dfile.encoding=UTF-8"})
+public class ConversionBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class DocxInput {
+
+		@Param({BenchmarkCorpus.MEMO, BenchmarkCorpus.TEXT_500_PAGES, BenchmarkCorpus.TABLE_HEAVY, BenchmarkCorpus.IMAGE_HEAVY})
+		public String corpus;
+
+		@Param({"XHTML", "DIRECT", "STREAMING"})
+		public MarkdownEngine engine;
+
+		byte[] docx;
+		DocumentConverter converter;
+
+		@Setup
+		public void setUp() {
+			docx = BenchmarkCorpus.docx(corpus);
+			converter = new DocxToMarkdownConverter(DocxToMarkdownOptions.create().engine(engine));
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class MarkdownInput {
+
+		@Param({BenchmarkCorpus.MEMO, BenchmarkCorpus.TEXT_500_PAGES, BenchmarkCorpus.NESTED_LISTS})
+		public String corpus;
+
+		byte[] markdown;
+		DocumentConverter converter;
+
+		@Setup
+		public void setUp() {
+			markdown = BenchmarkCorpus.markdown(corpus).getBytes(StandardCharsets.UTF_8);
+			converter = new MarkdownToDocxConverter();
+		}
+	}
+
+	@Benchmark
+	public void docxToMarkdown(DocxInput input) throws IOException {
+		input.converter.convert(new ByteArrayInputStream(input.docx), OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public void markdownToDocx(MarkdownInput input) throws IOException {
+		input.converter.convert(new ByteArrayInputStream(input.markdown), OutputStream.nullOutputStream());
+	}
+}
@@ -0,0 +1,195 @@
+package com.example;
+
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.html2md.converter.FlexmarkHtmlConverter;
+import com.vladsch.flexmark.parser.Parser;
+import fr.opensagres.poi.xwpf.converter.xhtml.XHTMLConverter;
+import fr.opensagres.poi.xwpf.converter.xhtml.XHTMLOptions;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One pipeline stage at a time, each fed the output of the stages before it as
+ * prepared in setup. Passes that mutate the DOM get a fresh copy per invocation;
+ * every stage here takes milliseconds, so the per-invocation setup cost does not
+ * skew the numbers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dfile.encoding=UTF-8"})
+public class StageBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class DocxStages {
+
+		@Param({BenchmarkCorpus.MEMO, BenchmarkCorpus.TEXT_500_PAGES, BenchmarkCorpus.TABLE_HEAVY, BenchmarkCorpus.IMAGE_HEAVY})
+		public String corpus;
+
+		byte[] docx;
+		XWPFDocument document;
+		XHTMLOptions xhtmlOptions;
+		Document parsed;
+		String passedHtml;
+		FlexmarkHtmlConverter htmlToMarkdown;
+
+		@Setup
+		public void setUp() throws IOException {
+			docx = BenchmarkCorpus.docx(corpus);
+			document = new XWPFDocument(new ByteArrayInputStream(docx));
+			xhtmlOptions = DocxToMarkdownConverter.xhtmlOptions();
+			parsed = xhtmlDom(document, xhtmlOptions);
+
+			Document passed = parsed.clone();
+			DocxToHtmlApp.defaultPipeline().run(passed, new HtmlPassContext(document, new ImageEmbedder(), false));
+			passedHtml = passed.outerHtml();
+			htmlToMarkdown = FlexmarkHtmlConverter.builder().build();
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			document.close();
+		}
+	}
+
+	/** A DOM that the pass under test may modify. */
+	@State(Scope.Thread)
+	public static class FreshDom {
+
+		Document html;
+
+		@Setup(Level.Invocation)
+		public void copy(DocxStages stages) {
+			html = stages.parsed.clone();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class MarkdownStages {
+
+		@Param({BenchmarkCorpus.MEMO, BenchmarkCorpus.TEXT_500_PAGES, BenchmarkCorpus.NESTED_LISTS})
+		public String corpus;
+
+		Parser parser;
+		HtmlRenderer renderer;
+		String markdown;
+		String html;
+		List<Element> lists;
+		XWPFDocument rendered;
+
+		@Setup
+		public void setUp() throws IOException {
+			parser = Parser.builder().build();
+			renderer = HtmlRenderer.builder().build();
+			markdown = BenchmarkCorpus.markdown(corpus);
+			html = renderer.render(parser.parse(markdown));
+			lists = new ArrayList<>(Jsoup.parse(html).select("body > ul, body > ol"));
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new MarkdownToDocxConverter().convert(new ByteArrayInputStream(markdown.getBytes(StandardCharsets.UTF_8)), out);
+			rendered = new XWPFDocument(new ByteArrayInputStream(out.toByteArray()));
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			rendered.close();
+		}
+	}
+
+	/** An empty target document for the list stage. */
+	@State(Scope.Thread)
+	public static class FreshDocx {
+
+		XWPFDocument document;
+		MdToDocxApp.ListNumberingIds ids;
+
+		@Setup(Level.Invocation)
+		public void create() {
+			document = new XWPFDocument();
+			ids = MdToDocxApp.ensureListNumberings(document);
+		}
+
+		@TearDown(Level.Invocation)
+		public void close() throws IOException {
+			document.close();
+		}
+	}
+
+	@Benchmark
+	public XWPFDocument poiLoad(DocxStages stages) throws IOException {
+		return new XWPFDocument(new ByteArrayInputStream(stages.docx));
+	}
+
+	/** XHTMLConverter's SAX events straight into a jsoup DOM, as the converter does it. */
+	@Benchmark
+	public Document xhtmlDom(DocxStages stages) throws IOException {
+		return xhtmlDom(stages.document, stages.xhtmlOptions);
+	}
+
+	@Benchmark
+	public Document enhanceTables(DocxStages stages, FreshDom dom) {
+		DocxToHtmlApp.enhanceTables(dom.html, stages.document);
+		return dom.html;
+	}
+
+	@Benchmark
+	public Document embedImages(DocxStages stages, FreshDom dom) throws IOException {
+		// A new embedder each time, otherwise every call after the first is a cache hit
+		DocxToHtmlApp.embedImages(dom.html, stages.document.getAllPictures(), new ImageEmbedder());
+		return dom.html;
+	}
+
+	@Benchmark
+	public String html2md(DocxStages stages) {
+		return stages.htmlToMarkdown.convert(stages.passedHtml);
+	}
+
+	@Benchmark
+	public String markdownToHtml(MarkdownStages stages) {
+		return stages.renderer.render(stages.parser.parse(stages.markdown));
+	}
+
+	@Benchmark
+	public XWPFDocument appendList(MarkdownStages stages, FreshDocx target) {
+		for (Element list : stages.lists) {
+			MdToDocxApp.appendList(target.document, list, target.ids, list.tagName().equals("ol"), 0);
+		}
+		return target.document;
+	}
+
+	private static Document xhtmlDom(XWPFDocument document, XHTMLOptions options) throws IOException {
+		JsoupDomBuilder dom = new JsoupDomBuilder();
+		((XHTMLConverter) XHTMLConverter.getInstance()).convert(document, dom, options);
+		return dom.getDocument();
+	}
+
+	@Benchmark
+	public void docxWrite(MarkdownStages stages) throws IOException {
+		stages.rendered.write(OutputStream.nullOutputStream());
+	}
+}
@@ -0,0 +1,57 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Option values for the command-line apps. Every bad value fails with an
+ * {@link IllegalArgumentException} naming the option, which the apps print
+ * above their usage before exiting with status 2.
+ */
+final class Arguments {
+
+	private Arguments() {
+	}
+
+	static int intValue(String option, String value, int min, int max) {
+		long parsed = longValue(option, value, min);
+		if (parsed > max) {
+			throw new IllegalArgumentException(option + " must be between " + min + " and " + max + ": " + value);
+		}
+		return (int) parsed;
+	}
+
+	static long longValue(String option, String value, long min) {
+		long parsed;
+		try {
+			parsed = Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(option + " needs a whole number: " + value, e);
+		}
+		if (parsed < min) {
+			throw new IllegalArgumentException(option + " must be at least " + min + ": " + value);
+		}
+		return parsed;
+	}
+
+	static float floatValue(String option, String value) {
+		try {
+			return Float.parseFloat(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(option + " needs a number: " + value, e);
+		}
+	}
+
+	/** The constant named {@code value}, ignoring case. */
+	static <E extends Enum<E>> E enumValue(String what, Class<E> type, String value) {
+		try {
+			return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			String known = Arrays.stream(type.getEnumConstants())
+				.map(c -> c.name().toLowerCase(Locale.ROOT))
+				.collect(Collectors.joining(", "));
+			throw new IllegalArgumentException("Unknown " + what + " '" + value + "', expected one of: " + known, e);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Converts a directory tree or a manifest of files in one JVM, so a nightly run
+ * pays startup and JIT warmup once instead of once per document.
+ */
+public class BatchConvertApp {
+
+	public static void main(String[] args) {
+		int status = run(args);
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/** The command line behind {@link #main}; 1 when any file failed, 2 when the batch could not run. */
+	static int run(String[] args) {
+		if (args.length < 2) {
+			printUsage();
+			return 0;
+		}
+
+		Path input = Paths.get(args[0]).toAbsolutePath().normalize();
+		Path outputDir = Paths.get(args[1]).toAbsolutePath().normalize();
+		DocxToMarkdownOptions options = DocxToMarkdownOptions.create();
+		MarkdownToDocxOptions mdOptions = MarkdownToDocxOptions.create();
+		int threads = BatchConverter.defaultThreads();
+		Path reportPath = null;
+		long cacheMb = -1;
+		Path cacheDir = null;
+		Path metricsPath = null;
+		long debounceMillis = -1;
+		long heapBudgetMb = -1;
+		long deadlineMillis = -1;
+		try {
+			for (int i = 2; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.startsWith("--threads=")) {
+					threads = Arguments.intValue("--threads", arg.substring("--threads=".length()), 1, Integer.MAX_VALUE);
+				} else if (arg.startsWith("--assets=")) {
+					options.imageAssetsDir(Paths.get(arg.substring("--assets=".length())).toAbsolutePath().normalize());
+				} else if (arg.startsWith("--cache-mb=")) {
+					cacheMb = Arguments.longValue("--cache-mb", arg.substring("--cache-mb=".length()), 0);
+				} else if (arg.startsWith("--cache-dir=")) {
+					cacheDir = Paths.get(arg.substring("--cache-dir=".length())).toAbsolutePath().normalize();
+				} else if (arg.startsWith("--metrics=")) {
+					metricsPath = Paths.get(arg.substring("--metrics=".length())).toAbsolutePath().normalize();
+				} else if (arg.startsWith("--md-engine=")) {
+					mdOptions.engine(Arguments.enumValue("--md-engine", DocxEngine.class, arg.substring("--md-engine=".length())));
+				} else if (arg.equals("--shared-styles")) {
+					options.sharedStyles(true);
+				} else if (arg.equals("--optimize-images")) {
+					options.optimizeImages(true);
+				} else if (arg.startsWith("--optimize-images=")) {
+					options.optimizeImages(true).imageQuality(
+						Arguments.floatValue("--optimize-images", arg.substring("--optimize-images=".length())));
+				} else if (arg.startsWith("--heap-budget-mb=")) {
+					heapBudgetMb = Arguments.longValue("--heap-budget-mb", arg.substring("--heap-budget-mb=".length()), 1);
+				} else if (arg.startsWith("--deadline-ms=")) {
+					deadlineMillis = Arguments.longValue("--deadline-ms", arg.substring("--deadline-ms=".length()), 0);
+				} else if (arg.equals("--watch")) {
+					debounceMillis = WatchConverter.DEFAULT_DEBOUNCE_MILLIS;
+				} else if (arg.startsWith("--watch=")) {
+					debounceMillis = Arguments.longValue("--watch", arg.substring("--watch=".length()), 0);
+				} else if (arg.startsWith("--report=")) {
+					reportPath = Paths.get(arg.substring("--report=".length())).toAbsolutePath().normalize();
+				} else {
+					options.engine(Arguments.enumValue("engine", MarkdownEngine.class, arg));
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			return 2;
+		}
+
+		try (Writer metrics = metricsPath != null ? Files.newBufferedWriter(metricsPath, StandardCharsets.UTF_8,
+			StandardOpenOption.CREATE, StandardOpenOption.APPEND) : null) {
+			if (metrics != null) {
+				// One line per converted file; cache hits do not convert and are not logged
+				ConversionListener listener = ConversionListener.jsonLines(metrics);
+				options.listener(listener);
+				mdOptions.listener(listener);
+			}
+			DocumentConverter docxToMarkdown = new DocxToMarkdownConverter(options);
+			DocumentConverter markdownToDocx = new MarkdownToDocxConverter(mdOptions);
+			ConversionScheduler scheduler = null;
+			if (heapBudgetMb >= 0 || deadlineMillis >= 0) {
+				// Inside the cache, so hits are answered without queueing
+				scheduler = new ConversionScheduler(heapBudgetMb >= 0 ? heapBudgetMb * 1024 * 1024 : ConversionScheduler.defaultBudget(),
+					Math.max(deadlineMillis, 0));
+				docxToMarkdown = scheduler.wrap(docxToMarkdown);
+				markdownToDocx = scheduler.wrap(markdownToDocx);
+			}
+			ConversionCache cache = null;
+			if (cacheMb >= 0 || cacheDir != null) {
+				cache = new ConversionCache((cacheMb >= 0 ? cacheMb : 64) * 1024 * 1024, cacheDir);
+				docxToMarkdown = new CachingConverter(docxToMarkdown, cache);
+				markdownToDocx = new CachingConverter(markdownToDocx, cache);
+			}
+
+			if (debounceMillis >= 0) {
+				if (!Files.isDirectory(input)) {
+					System.err.println("--watch needs an input directory: " + input);
+					return 2;
+				}
+				WatchConverter watcher = new WatchConverter(docxToMarkdown, markdownToDocx, threads, scheduler,
+					input, outputDir, debounceMillis);
+				ConversionCache watchCache = cache;
+				Path watchReport = reportPath;
+				watcher.watch(round -> {
+					if (!round.isEmpty()) {
+						printRound(round, watchCache, watchReport);
+					}
+				});
+				return 0;
+			}
+
+			List<BatchConverter.Job> jobs = Files.isDirectory(input)
+				? BatchConverter.scanDirectory(input, outputDir)
+				: BatchConverter.readManifest(input, outputDir);
+			BatchConverter batch = new BatchConverter(docxToMarkdown, markdownToDocx, threads, scheduler);
+			BatchReport report = batch.convert(jobs);
+			printSummary(report.format(), cache, reportPath);
+			return report.hasFailures() ? 1 : 0;
+		} catch (IllegalArgumentException e) {
+			// Input and output directories that overlap
+			System.err.println(e.getMessage());
+			return 2;
+		} catch (Exception e) {
+			e.printStackTrace();
+			return 2;
+		}
+	}
+
+	private static void printUsage() {
+		System.out.println("Usage: java -cp build/libs/* com.example.BatchConvertApp <input-dir|manifest.txt> <output-dir>"
+			+ " [xhtml|direct|streaming] [--threads=<n>] [--assets=<dir>] [--report=<file>]"
+			+ " [--cache-mb=<n>] [--cache-dir=<dir>] [--metrics=<file.jsonl>] [--md-engine=html|direct] [--shared-styles]"
+			+ " [--optimize-images[=<quality>]] [--heap-budget-mb=<n>] [--deadline-ms=<n>] [--watch[=<debounce-ms>]]");
+		System.out.println("A manifest lists one input per line, optionally followed by a tab and an output path.");
+		System.out.println("--heap-budget-mb holds back large documents while others would not fit; --deadline-ms fails any"
+			+ " document not done in time. Either one turns on the scheduler; the budget defaults to 3/4 of -Xmx.");
+		System.out.println("--watch keeps running on an input directory and converts only new and changed files.");
+	}
+
+	private static void printRound(WatchConverter.Round round, ConversionCache cache, Path reportPath) {
+		StringBuilder sb = new StringBuilder(round.getReport().format());
+		for (Path removed : round.getRemoved()) {
+			sb.append("Removed: ").append(removed).append(System.lineSeparator());
+		}
+		try {
+			printSummary(sb.toString(), cache, reportPath);
+		} catch (IOException e) {
+			// The report file is a convenience; the next round tries again
+			e.printStackTrace();
+		}
+	}
+
+	/** Prints the summary and, with {@code --report}, replaces the report file with it. */
+	private static void printSummary(String text, ConversionCache cache, Path reportPath) throws IOException {
+		String summary = text + (cache != null ? cache + System.lineSeparator() : "");
+		System.out.print(summary);
+		if (reportPath != null) {
+			Files.createDirectories(reportPath.getParent());
+			Files.write(reportPath, summary.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
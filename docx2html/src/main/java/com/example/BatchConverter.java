@@ -0,0 +1,213 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts many files in one JVM on a fixed pool of workers. {@code .docx}
+ * inputs become {@code .md} and {@code .md} inputs become {@code .docx}. A
+ * failing file is recorded in the {@link BatchReport} and its partial output
+ * removed; the rest of the batch carries on. With a {@link ConversionScheduler}
+ * the jobs are handed out smallest first. Admission against its heap budget is
+ * the converters' part: pass them {@linkplain ConversionScheduler#wrap wrapped}
+ * by the same scheduler, inside any {@link CachingConverter}, so cache hits do
+ * not queue.
+ */
+public class BatchConverter {
+
+	/** One input and where its result goes. */
+	public static final class Job {
+
+		private final Path input;
+		private final Path output;
+
+		public Job(Path input, Path output) {
+			this.input = Objects.requireNonNull(input, "input");
+			this.output = Objects.requireNonNull(output, "output");
+		}
+
+		public Path getInput() {
+			return input;
+		}
+
+		public Path getOutput() {
+			return output;
+		}
+	}
+
+	private final DocumentConverter docxToMarkdown;
+	private final DocumentConverter markdownToDocx;
+	private final int threads;
+	private final ConversionScheduler scheduler;
+
+	public BatchConverter(DocumentConverter docxToMarkdown, DocumentConverter markdownToDocx, int threads) {
+		this(docxToMarkdown, markdownToDocx, threads, null);
+	}
+
+	/** {@code scheduler} only orders the jobs, see above; {@code null} keeps the given order. */
+	public BatchConverter(DocumentConverter docxToMarkdown, DocumentConverter markdownToDocx, int threads,
+						  ConversionScheduler scheduler) {
+		Objects.requireNonNull(docxToMarkdown, "docxToMarkdown");
+		Objects.requireNonNull(markdownToDocx, "markdownToDocx");
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		this.docxToMarkdown = docxToMarkdown;
+		this.markdownToDocx = markdownToDocx;
+		this.threads = threads;
+		this.scheduler = scheduler;
+	}
+
+	public static int defaultThreads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	public BatchReport convert(List<Job> jobs) throws InterruptedException {
+		BatchReport report = new BatchReport(jobs.size());
+		AtomicInteger workerId = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "batch-convert-" + workerId.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			for (Job job : scheduler != null ? smallestFirst(jobs) : jobs) {
+				pool.execute(() -> report.add(convertOne(job)));
+			}
+			pool.shutdown();
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+				// Keep waiting; a single huge document can take a while
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		report.finish();
+		return report;
+	}
+
+	/**
+	 * The scheduler only orders jobs that are already waiting on it, so the pool
+	 * gets them in the same order. Unreadable inputs go first and fail fast.
+	 */
+	private List<Job> smallestFirst(List<Job> jobs) {
+		Map<Job, Long> cost = new HashMap<>();
+		for (Job job : jobs) {
+			try {
+				cost.put(job, scheduler.estimate(job.getInput()));
+			} catch (IOException e) {
+				cost.put(job, 0L);
+			}
+		}
+		List<Job> sorted = new ArrayList<>(jobs);
+		sorted.sort(Comparator.comparingLong(cost::get));
+		return sorted;
+	}
+
+	private BatchReport.Result convertOne(Job job) {
+		long start = System.nanoTime();
+		long bytes = -1;
+		try {
+			bytes = Files.size(job.getInput());
+			converterFor(job.getInput()).convert(job.getInput(), job.getOutput());
+			return new BatchReport.Result(job, bytes, System.nanoTime() - start, null);
+		} catch (Exception | StackOverflowError e) {
+			// Deeply nested documents can blow the stack; that is this file's problem only
+			try {
+				Files.deleteIfExists(job.getOutput());
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			return new BatchReport.Result(job, bytes, System.nanoTime() - start, e);
+		}
+	}
+
+	private DocumentConverter converterFor(Path input) throws IOException {
+		if (isDocx(input)) return docxToMarkdown;
+		if (isMarkdown(input)) return markdownToDocx;
+		throw new IOException("Unsupported file type: " + input.getFileName());
+	}
+
+	/**
+	 * Every {@code .docx}/{@code .md} under {@code inputDir}, mirrored under
+	 * {@code outputDir}. Files already under {@code outputDir} are skipped, so
+	 * {@code outputDir} must not be {@code inputDir} or contain it.
+	 */
+	public static List<Job> scanDirectory(Path inputDir, Path outputDir) throws IOException {
+		Path root = inputDir.toAbsolutePath().normalize();
+		Path outRoot = outputDir.toAbsolutePath().normalize();
+		if (root.startsWith(outRoot)) {
+			throw new IllegalArgumentException("Output directory must not contain the input directory: " + outRoot);
+		}
+		try (Stream<Path> files = Files.walk(root)) {
+			return files
+				.filter(Files::isRegularFile)
+				.filter(p -> !p.startsWith(outRoot))
+				.filter(BatchConverter::isConvertible)
+				.sorted()
+				.map(p -> new Job(p, outRoot.resolve(outputName(root.relativize(p)))))
+				.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * One input per line, optionally followed by a tab and an explicit output
+	 * path. Blank lines and lines starting with {@code #} are skipped. Relative
+	 * paths resolve against the manifest's directory.
+	 */
+	public static List<Job> readManifest(Path manifest, Path outputDir) throws IOException {
+		Path base = manifest.toAbsolutePath().normalize().getParent();
+		Path outRoot = outputDir.toAbsolutePath().normalize();
+		List<Job> jobs = new ArrayList<>();
+		for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+				continue;
+			}
+			String[] fields = trimmed.split("\t", 2);
+			Path input = base.resolve(fields[0].trim()).normalize();
+			Path output;
+			if (fields.length > 1 && !fields[1].trim().isEmpty()) {
+				output = outRoot.resolve(fields[1].trim()).normalize();
+			} else {
+				Path relative = input.startsWith(base) ? base.relativize(input) : input.getFileName();
+				output = outRoot.resolve(outputName(relative));
+			}
+			jobs.add(new Job(input, output));
+		}
+		return jobs;
+	}
+
+	static Path outputName(Path relativeInput) {
+		String name = relativeInput.getFileName().toString();
+		String stem = name.substring(0, name.lastIndexOf('.'));
+		return relativeInput.resolveSibling(stem + (isDocx(relativeInput) ? ".md" : ".docx"));
+	}
+
+	static boolean isConvertible(Path p) {
+		// "~$name.docx" is Word's lock file, not a document
+		return (isDocx(p) || isMarkdown(p)) && !p.getFileName().toString().startsWith("~$");
+	}
+
+	private static boolean isDocx(Path p) {
+		return p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".docx");
+	}
+
+	private static boolean isMarkdown(Path p) {
+		return p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".md");
+	}
+}
@@ -0,0 +1,131 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Outcome of a {@link BatchConverter} run: per-file results plus the numbers
+ * worth printing at the end of a nightly job.
+ */
+public class BatchReport {
+
+	private static final int SLOWEST_SHOWN = 10;
+
+	/** Result for one file; {@link #getError()} is null on success. */
+	public static final class Result {
+
+		private final BatchConverter.Job job;
+		private final long inputBytes;
+		private final long nanos;
+		private final Throwable error;
+
+		Result(BatchConverter.Job job, long inputBytes, long nanos, Throwable error) {
+			this.job = job;
+			this.inputBytes = inputBytes;
+			this.nanos = nanos;
+			this.error = error;
+		}
+
+		public BatchConverter.Job getJob() {
+			return job;
+		}
+
+		/** Size of the input file, or -1 when it could not be read. */
+		public long getInputBytes() {
+			return inputBytes;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public Throwable getError() {
+			return error;
+		}
+
+		public boolean isSuccess() {
+			return error == null;
+		}
+	}
+
+	private int submitted;
+	private final List<Result> results;
+	private final long startNanos = System.nanoTime();
+	private long wallNanos;
+
+	BatchReport(int submitted) {
+		this.submitted = submitted;
+		this.results = new ArrayList<>(submitted);
+	}
+
+	synchronized void add(Result result) {
+		results.add(result);
+	}
+
+	/** A file that failed before it could be converted; counts as submitted and failed. */
+	synchronized void addRejected(Result result) {
+		submitted++;
+		results.add(result);
+	}
+
+	synchronized void finish() {
+		wallNanos = System.nanoTime() - startNanos;
+	}
+
+	public synchronized List<Result> getResults() {
+		return Collections.unmodifiableList(new ArrayList<>(results));
+	}
+
+	public synchronized List<Result> getFailures() {
+		return results.stream().filter(r -> !r.isSuccess()).collect(Collectors.toList());
+	}
+
+	public synchronized List<Result> getSlowest(int n) {
+		return results.stream()
+			.sorted(Comparator.comparingLong(Result::getNanos).reversed())
+			.limit(n)
+			.collect(Collectors.toList());
+	}
+
+	public synchronized long getWallNanos() {
+		return wallNanos;
+	}
+
+	public synchronized boolean hasFailures() {
+		return results.stream().anyMatch(r -> !r.isSuccess());
+	}
+
+	/** Plain-text summary: counts, throughput, every failure and the slowest files. */
+	public synchronized String format() {
+		long failed = results.stream().filter(r -> !r.isSuccess()).count();
+		long bytes = results.stream().mapToLong(r -> Math.max(r.getInputBytes(), 0)).sum();
+		double seconds = wallNanos / 1e9;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "Files: %d submitted, %d converted, %d failed%n",
+			submitted, results.size() - failed, failed));
+		sb.append(String.format(Locale.ROOT, "Wall time: %.2f s, %.1f files/s, %.2f MB/s%n",
+			seconds, seconds > 0 ? results.size() / seconds : 0.0, seconds > 0 ? bytes / 1e6 / seconds : 0.0));
+
+		if (failed > 0) {
+			sb.append(String.format("%nFailures:%n"));
+			for (Result r : getFailures()) {
+				sb.append("  ").append(r.getJob().getInput()).append(": ").append(r.getError()).append(System.lineSeparator());
+			}
+		}
+
+		List<Result> slowest = getSlowest(SLOWEST_SHOWN);
+		if (!slowest.isEmpty()) {
+			sb.append(String.format("%nSlowest:%n"));
+			for (Result r : slowest) {
+				sb.append(String.format(Locale.ROOT, "  %8.1f ms  %10d B  %s%s%n",
+					r.getNanos() / 1e6, r.getInputBytes(), r.getJob().getInput(), r.isSuccess() ? "" : " (failed)"));
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,80 @@
+package com.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Puts a {@link ConversionCache} in front of another converter. Input that was
+ * converted before with the same settings is answered from the cache without
+ * touching POI, jsoup or flexmark. A delegate that {@link DocumentConverter#writesAssets
+ * writes assets} is called every time, since a hit would restore the output alone,
+ * and so is one whose {@link DocumentConverter#cacheKey} is {@code null}.
+ */
+public final class CachingConverter implements DocumentConverter {
+
+	private final DocumentConverter delegate;
+	private final ConversionCache cache;
+
+	public CachingConverter(DocumentConverter delegate, ConversionCache cache) {
+		this.delegate = Objects.requireNonNull(delegate, "delegate");
+		this.cache = Objects.requireNonNull(cache, "cache");
+	}
+
+	@Override
+	public void convert(InputStream in, OutputStream out) throws IOException {
+		String converterKey = delegate.cacheKey(null);
+		if (converterKey == null || delegate.writesAssets()) {
+			delegate.convert(in, out);
+			return;
+		}
+		byte[] input = in.readAllBytes();
+		String key = ConversionCache.key(converterKey, input);
+		byte[] result = cache.get(key);
+		if (result == null) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			delegate.convert(new ByteArrayInputStream(input), buffer);
+			result = buffer.toByteArray();
+			cache.put(key, result);
+		}
+		out.write(result);
+	}
+
+	/**
+	 * On a miss the delegate still converts file to file, so engines that read from
+	 * disk keep doing so. Neither the input nor a large output is loaded whole: the
+	 * input is hashed as it streams, and outputs go to the cache by copy.
+	 */
+	@Override
+	public void convert(Path input, Path output) throws IOException {
+		String converterKey = delegate.cacheKey(output);
+		if (converterKey == null || delegate.writesAssets()) {
+			delegate.convert(input, output);
+			return;
+		}
+		String key = ConversionCache.key(converterKey, input);
+		if (cache.copyTo(key, output)) {
+			return;
+		}
+		delegate.convert(input, output);
+		cache.put(key, output);
+	}
+
+	@Override
+	public String cacheKey(Path output) {
+		return delegate.cacheKey(output);
+	}
+
+	@Override
+	public boolean writesAssets() {
+		return delegate.writesAssets();
+	}
+
+	public ConversionCache getCache() {
+		return cache;
+	}
+}
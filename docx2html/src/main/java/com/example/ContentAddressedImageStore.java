@@ -0,0 +1,63 @@
+package com.example;
+
+import org.apache.poi.openxml4j.opc.PackagePart;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Writes each picture once to a shared assets directory as
+ * {@code <sha256>.<ext>} and references it by a path relative to the Markdown
+ * file. Documents that contain the same image share the file: the picture is
+ * hashed first and only written when no file of that name exists yet.
+ */
+class ContentAddressedImageStore implements ImageOutput {
+
+	private final Path assetsDir;
+	private final Path markdownDir;
+	private final PictureSource pictures;
+	private final Map<String, String> srcByPartName = new HashMap<>();
+
+	ContentAddressedImageStore(Path assetsDir, Path markdownDir, PictureSource pictures) {
+		this.assetsDir = Objects.requireNonNull(assetsDir, "assetsDir").toAbsolutePath().normalize();
+		this.markdownDir = Objects.requireNonNull(markdownDir, "markdownDir").toAbsolutePath().normalize();
+		this.pictures = Objects.requireNonNull(pictures, "pictures");
+	}
+
+	@Override
+	public String src(PackagePart part) throws IOException {
+		String partName = part.getPartName().getName();
+		String src = srcByPartName.get(partName);
+		if (src == null) {
+			src = markdownDir.relativize(store(part)).toString().replace(File.separatorChar, '/');
+			srcByPartName.put(partName, src);
+		}
+		return src;
+	}
+
+	private Path store(PackagePart part) throws IOException {
+		Path target = assetsDir.resolve(ImageEmbedder.digest(pictures, part) + "." + pictures.extension(part));
+		if (Files.exists(target)) {
+			return target;
+		}
+		Files.createDirectories(assetsDir);
+		Path tmp = Files.createTempFile(assetsDir, ".img-", ".tmp");
+		try {
+			try (InputStream in = pictures.open(part)) {
+				Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+			}
+			// Same name means same bytes, so losing a race to another writer is harmless
+			Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return target;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+}
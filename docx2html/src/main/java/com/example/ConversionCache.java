@@ -0,0 +1,247 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converted bytes keyed by the SHA-256 of the input plus the converter's
+ * {@link DocumentConverter#cacheKey} and the {@link #CODE_VERSION}, so results
+ * of an older build are never served by a newer one. Recent results stay in memory, evicted
+ * least recently used once their total size passes the budget. With a directory
+ * configured every result is also kept on disk under {@code <key[0..2]>/<key>},
+ * which survives restarts and is never pruned by this class. Safe to share
+ * between threads.
+ */
+public class ConversionCache {
+
+	/**
+	 * Hash of the sources and libraries this build was made from, written by the
+	 * {@code buildStamp} Gradle task. Without it (classes run from an IDE) every
+	 * process gets a value of its own, so nothing it stored is trusted by another.
+	 */
+	static final String CODE_VERSION = codeVersion();
+
+	private final long maxMemoryBytes;
+	private final Path diskDir;
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+	private long memoryBytes;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** @param diskDir second tier, or {@code null} for memory only */
+	public ConversionCache(long maxMemoryBytes, Path diskDir) {
+		if (maxMemoryBytes < 0) {
+			throw new IllegalArgumentException("maxMemoryBytes must not be negative: " + maxMemoryBytes);
+		}
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.diskDir = diskDir != null ? diskDir.toAbsolutePath().normalize() : null;
+	}
+
+	static String key(String converterKey, byte[] input) {
+		MessageDigest digest = keyDigest(converterKey);
+		digest.update(input);
+		return ImageEmbedder.toHex(digest.digest());
+	}
+
+	/** As above, streaming the file through the digest rather than loading it. */
+	static String key(String converterKey, Path input) throws IOException {
+		MessageDigest digest = keyDigest(converterKey);
+		try (InputStream in = new DigestInputStream(Files.newInputStream(input), digest)) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		return ImageEmbedder.toHex(digest.digest());
+	}
+
+	private static MessageDigest keyDigest(String converterKey) {
+		MessageDigest digest = ImageEmbedder.sha256();
+		digest.update(CODE_VERSION.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(converterKey.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		return digest;
+	}
+
+	private static String codeVersion() {
+		try (InputStream in = ConversionCache.class.getResourceAsStream("build-stamp")) {
+			if (in != null) {
+				return new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+			}
+		} catch (IOException e) {
+			// Treated as unstamped
+		}
+		return "unstamped-" + UUID.randomUUID();
+	}
+
+	/** The cached result, or {@code null}; counts a hit or a miss. */
+	byte[] get(String key) {
+		synchronized (memory) {
+			byte[] value = memory.get(key);
+			if (value != null) {
+				memoryHits.incrementAndGet();
+				return value;
+			}
+		}
+		if (diskDir != null) {
+			try {
+				byte[] value = Files.readAllBytes(diskPath(key));
+				diskHits.incrementAndGet();
+				remember(key, value);
+				return value;
+			} catch (NoSuchFileException e) {
+				// Not converted before
+			} catch (IOException e) {
+				// An unreadable entry is just a miss
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Writes the cached result to {@code output} and returns true, or returns false
+	 * on a miss; counts a hit or a miss. A disk entry is copied without loading it,
+	 * and only kept in memory when it fits there.
+	 */
+	boolean copyTo(String key, Path output) throws IOException {
+		byte[] value;
+		synchronized (memory) {
+			value = memory.get(key);
+		}
+		if (value != null) {
+			memoryHits.incrementAndGet();
+			createParent(output);
+			Files.write(output, value);
+			return true;
+		}
+		if (diskDir != null) {
+			try {
+				createParent(output);
+				Files.copy(diskPath(key), output, StandardCopyOption.REPLACE_EXISTING);
+				diskHits.incrementAndGet();
+				if (Files.size(output) <= maxMemoryBytes) {
+					remember(key, Files.readAllBytes(output));
+				}
+				return true;
+			} catch (NoSuchFileException e) {
+				// Not converted before
+			} catch (IOException e) {
+				// An unreadable entry is just a miss; the conversion overwrites any partial copy
+			}
+		}
+		misses.incrementAndGet();
+		return false;
+	}
+
+	void put(String key, byte[] value) {
+		remember(key, value);
+		if (diskDir != null) {
+			try {
+				writeToDisk(key, tmp -> Files.write(tmp, value));
+			} catch (IOException e) {
+				// Best effort: the conversion itself succeeded
+			}
+		}
+	}
+
+	/** Stores the converted file {@code output}; it is only read into memory when it fits there. */
+	void put(String key, Path output) throws IOException {
+		if (Files.size(output) <= maxMemoryBytes) {
+			put(key, Files.readAllBytes(output));
+		} else if (diskDir != null) {
+			try {
+				writeToDisk(key, tmp -> Files.copy(output, tmp, StandardCopyOption.REPLACE_EXISTING));
+			} catch (IOException e) {
+				// Best effort, as above
+			}
+		}
+	}
+
+	private void remember(String key, byte[] value) {
+		if (value.length > maxMemoryBytes) {
+			return;
+		}
+		synchronized (memory) {
+			byte[] previous = memory.put(key, value);
+			memoryBytes += value.length - (previous != null ? previous.length : 0);
+			Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+			while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+				memoryBytes -= eldest.next().getValue().length;
+				eldest.remove();
+			}
+		}
+	}
+
+	private void writeToDisk(String key, Content value) throws IOException {
+		Path target = diskPath(key);
+		if (Files.exists(target)) {
+			return;
+		}
+		Files.createDirectories(target.getParent());
+		Path tmp = Files.createTempFile(target.getParent(), ".entry-", ".tmp");
+		try {
+			value.writeTo(tmp);
+			// Same key means same bytes, so a concurrent writer winning is harmless
+			Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private Path diskPath(String key) {
+		return diskDir.resolve(key.substring(0, 2)).resolve(key);
+	}
+
+	private static void createParent(Path output) throws IOException {
+		Path parent = output.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+	}
+
+	/** Writes an entry's bytes to a temporary file. */
+	private interface Content {
+
+		void writeTo(Path tmp) throws IOException;
+	}
+
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getMemoryBytes() {
+		synchronized (memory) {
+			return memoryBytes;
+		}
+	}
+
+	@Override
+	public String toString() {
+		long hits = getMemoryHits() + getDiskHits();
+		return String.format(Locale.ROOT, "Cache: %d hits (%d from disk), %d misses, %.1f MB in memory",
+			hits, getDiskHits(), getMisses(), getMemoryBytes() / 1e6);
+	}
+}
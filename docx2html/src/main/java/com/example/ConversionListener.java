@@ -0,0 +1,35 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * Receives the {@link ConversionMetrics} of every conversion, successful or
+ * not, on the converting thread. Implementations shared by several converters
+ * or threads must be thread-safe. An exception thrown here does not change the
+ * conversion's outcome: it is suppressed into the conversion's own failure, or
+ * printed to standard error when the conversion succeeded.
+ */
+@FunctionalInterface
+public interface ConversionListener {
+
+	void onConversion(ConversionMetrics metrics);
+
+	/** Appends one {@link ConversionMetrics#toJson()} line per conversion, flushing each. */
+	static ConversionListener jsonLines(Writer out) {
+		Objects.requireNonNull(out, "out");
+		return metrics -> {
+			String line = metrics.toJson() + "\n";
+			synchronized (out) {
+				try {
+					out.write(line);
+					out.flush();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,146 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What {@link WatchConverter} last converted: per input, its modification time,
+ * size and SHA-256, and the output written from it. Kept as a tab-separated text
+ * file and replaced atomically, so a crash while saving leaves the previous
+ * version. Paths are relative, with {@code /} separators.
+ */
+final class ConversionManifest {
+
+	private static final String HEADER = "# convert-manifest 1";
+	private static final String SETTINGS = "# settings ";
+
+	static final class Entry {
+		final long modifiedMillis;
+		final long size;
+		final String sha256;
+		final String output;
+
+		Entry(long modifiedMillis, long size, String sha256, String output) {
+			this.modifiedMillis = modifiedMillis;
+			this.size = size;
+			this.sha256 = sha256;
+			this.output = output;
+		}
+	}
+
+	private final Path file;
+	private final String settings;
+	private final Map<String, Entry> entries = new TreeMap<>();
+	private boolean dirty;
+
+	private ConversionManifest(Path file, String settings) {
+		this.file = file;
+		this.settings = settings;
+	}
+
+	/**
+	 * Reads {@code file} if it exists. {@code settings} identifies the converters;
+	 * when it differs from the saved one every entry is kept for output cleanup
+	 * but no longer counts as up to date.
+	 */
+	static ConversionManifest load(Path file, String settings) throws IOException {
+		ConversionManifest manifest = new ConversionManifest(file, sha256(settings));
+		if (Files.notExists(file)) {
+			return manifest;
+		}
+		boolean sameSettings = false;
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			if (line.startsWith(SETTINGS)) {
+				sameSettings = line.substring(SETTINGS.length()).equals(manifest.settings);
+			} else if (!line.isEmpty() && !line.startsWith("#")) {
+				String[] fields = line.split("\t", 5);
+				if (fields.length < 5) {
+					continue;
+				}
+				Entry entry = sameSettings
+					? new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2], fields[4])
+					: new Entry(-1, -1, "", fields[4]);
+				manifest.entries.put(fields[3], entry);
+			}
+		}
+		manifest.dirty = !sameSettings;
+		return manifest;
+	}
+
+	Entry get(String input) {
+		return entries.get(input);
+	}
+
+	void put(String input, Entry entry) {
+		entries.put(input, entry);
+		dirty = true;
+	}
+
+	Entry remove(String input) {
+		Entry removed = entries.remove(input);
+		dirty |= removed != null;
+		return removed;
+	}
+
+	/** Inputs equal to {@code prefix} or below it as a directory. */
+	List<String> inputsUnder(String prefix) {
+		List<String> inputs = new ArrayList<>();
+		for (String input : entries.keySet()) {
+			if (input.equals(prefix) || input.startsWith(prefix + "/")) {
+				inputs.add(input);
+			}
+		}
+		return inputs;
+	}
+
+	List<String> inputs() {
+		return new ArrayList<>(entries.keySet());
+	}
+
+	/** Writes the manifest if anything changed since it was loaded or last saved. */
+	void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, ".manifest-", ".tmp");
+		try {
+			try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				out.write(HEADER + "\n" + SETTINGS + settings + "\n");
+				for (Map.Entry<String, Entry> e : entries.entrySet()) {
+					Entry entry = e.getValue();
+					out.write(entry.modifiedMillis + "\t" + entry.size + "\t" + entry.sha256 + "\t" + e.getKey() + "\t" + entry.output + "\n");
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			dirty = false;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	static String sha256(Path path) throws IOException {
+		MessageDigest digest = ImageEmbedder.sha256();
+		try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		return ImageEmbedder.toHex(digest.digest());
+	}
+
+	private static String sha256(String text) {
+		return ImageEmbedder.toHex(ImageEmbedder.sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+}
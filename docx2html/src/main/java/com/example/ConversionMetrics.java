@@ -0,0 +1,182 @@
+package com.example;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What one conversion cost, stage by stage. Byte counts are -1 where a stage
+ * has no meaningful input or output, and allocation is -1 when the JVM cannot
+ * report per-thread allocation.
+ */
+public class ConversionMetrics {
+
+	/** One timed step, e.g. {@code load}, {@code xhtml}, {@code html2md} or {@code write}. */
+	public static final class Stage {
+
+		private final String name;
+		private final long wallNanos;
+		private final long allocatedBytes;
+		private final long inputBytes;
+		private final long outputBytes;
+
+		Stage(String name, long wallNanos, long allocatedBytes, long inputBytes, long outputBytes) {
+			this.name = name;
+			this.wallNanos = wallNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.inputBytes = inputBytes;
+			this.outputBytes = outputBytes;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public long getInputBytes() {
+			return inputBytes;
+		}
+
+		public long getOutputBytes() {
+			return outputBytes;
+		}
+	}
+
+	private final String converter;
+	private final String source;
+	private final Instant startedAt;
+	private final long wallNanos;
+	private final long allocatedBytes;
+	private final long inputBytes;
+	private final long outputBytes;
+	private final List<Stage> stages;
+	private final String error;
+
+	ConversionMetrics(String converter, String source, Instant startedAt, long wallNanos, long allocatedBytes,
+					  long inputBytes, long outputBytes, List<Stage> stages, String error) {
+		this.converter = converter;
+		this.source = source;
+		this.startedAt = startedAt;
+		this.wallNanos = wallNanos;
+		this.allocatedBytes = allocatedBytes;
+		this.inputBytes = inputBytes;
+		this.outputBytes = outputBytes;
+		this.stages = Collections.unmodifiableList(stages);
+		this.error = error;
+	}
+
+	/** Direction and engine, e.g. {@code docx-to-md/XHTML}. */
+	public String getConverter() {
+		return converter;
+	}
+
+	/** Input file name, or {@code null} for stream conversions. */
+	public String getSource() {
+		return source;
+	}
+
+	public Instant getStartedAt() {
+		return startedAt;
+	}
+
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	public long getInputBytes() {
+		return inputBytes;
+	}
+
+	public long getOutputBytes() {
+		return outputBytes;
+	}
+
+	public List<Stage> getStages() {
+		return stages;
+	}
+
+	/** The failure, or {@code null} when the conversion succeeded. */
+	public String getError() {
+		return error;
+	}
+
+	/** A single-line JSON object, suitable for a JSON-lines log. */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder(256 + stages.size() * 96);
+		sb.append("{\"converter\":").append(quote(converter));
+		sb.append(",\"source\":").append(quote(source));
+		sb.append(",\"startedAt\":").append(quote(startedAt.toString()));
+		sb.append(",\"wallMs\":").append(millis(wallNanos));
+		sb.append(",\"allocatedBytes\":").append(allocatedBytes);
+		sb.append(",\"inputBytes\":").append(inputBytes);
+		sb.append(",\"outputBytes\":").append(outputBytes);
+		sb.append(",\"error\":").append(quote(error));
+		sb.append(",\"stages\":[");
+		for (int i = 0; i < stages.size(); i++) {
+			Stage s = stages.get(i);
+			if (i > 0) sb.append(',');
+			sb.append("{\"name\":").append(quote(s.name));
+			sb.append(",\"wallMs\":").append(millis(s.wallNanos));
+			sb.append(",\"allocatedBytes\":").append(s.allocatedBytes);
+			sb.append(",\"inputBytes\":").append(s.inputBytes);
+			sb.append(",\"outputBytes\":").append(s.outputBytes);
+			sb.append('}');
+		}
+		return sb.append("]}").toString();
+	}
+
+	@Override
+	public String toString() {
+		return toJson();
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	private static String quote(String s) {
+		if (s == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						sb.append(String.format("\\u%04x", (int) c));
+					} else {
+						sb.append(c);
+					}
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,330 @@
+package com.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Admission control for conversions sharing one heap. Each job's peak heap is
+ * estimated from its input before it starts: a {@code .docx} by the unpacked
+ * size of its XML parts and pictures, Markdown by its length. Jobs run while
+ * their estimates fit the budget together; the rest wait, smallest first, so a
+ * few huge documents cannot run each other, and everything else, out of memory.
+ * A job larger than the whole budget runs once nothing else does. Input that
+ * comes as a stream has to be buffered before it can be sized; while its job
+ * waits, those bytes count against the budget too, so running jobs make room
+ * for them. How many such jobs wait at once is for the caller to bound, as
+ * {@link ConversionServer} does with its request slots.
+ *
+ * <p>With a deadline, every job must finish within that many milliseconds of
+ * reaching the scheduler, queueing included. The check is cooperative: a job
+ * waiting too long leaves the queue, and a running one stops at its next stage
+ * boundary (see {@link StageRecorder#start}). Both fail with an
+ * {@link InterruptedIOException}. A small job arriving steadily can keep a large
+ * one waiting; the deadline is what bounds that wait.
+ */
+public final class ConversionScheduler {
+
+	/** Working set of a conversion before its input counts: buffers, POI package, output. */
+	static final long BASE_COST = 4L * 1024 * 1024;
+	/** Heap per byte of unpacked XML; POI's and jsoup's trees are large. Measured on the XHTML engine. */
+	static final int XML_FACTOR = 20;
+	/** Heap per byte of picture: its bytes, the Base64 text and the copies in between. */
+	static final int MEDIA_FACTOR = 4;
+	/** Heap per byte of Markdown: the string, flexmark's AST and the XWPF document. */
+	static final int MARKDOWN_FACTOR = 16;
+
+	private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+	private static final int ZIP_END = 0x06054b50;
+	private static final int ZIP_ENTRY = 0x02014b50;
+	private static final int ZIP_END_SIZE = 22;
+	private static final int ZIP_ENTRY_SIZE = 46;
+
+	private final long budgetBytes;
+	private final long deadlineMillis;
+	private final PriorityQueue<Ticket> waiting = new PriorityQueue<>(
+		Comparator.comparingLong((Ticket t) -> t.cost).thenComparingLong(t -> t.sequence));
+	private long sequence;
+	private long reservedBytes;
+	/** Input buffered by jobs still in the queue. */
+	private long heldBytes;
+	private int running;
+
+	/** {@code deadlineMillis} of 0 means no deadline. */
+	public ConversionScheduler(long budgetBytes, long deadlineMillis) {
+		if (budgetBytes < 1) {
+			throw new IllegalArgumentException("budgetBytes must be positive: " + budgetBytes);
+		}
+		if (deadlineMillis < 0) {
+			throw new IllegalArgumentException("deadlineMillis must not be negative: " + deadlineMillis);
+		}
+		this.budgetBytes = budgetBytes;
+		this.deadlineMillis = deadlineMillis;
+	}
+
+	/** Three quarters of the maximum heap; the rest is for the JVM, caches and estimation error. */
+	public static long defaultBudget() {
+		return Runtime.getRuntime().maxMemory() / 4 * 3;
+	}
+
+	/** {@code delegate} with each conversion admitted by this scheduler. */
+	public DocumentConverter wrap(DocumentConverter delegate) {
+		return new ScheduledConverter(delegate);
+	}
+
+	/** Estimated peak heap of converting {@code input}, read from the zip directory without unpacking. */
+	public long estimate(Path input) throws IOException {
+		long size = Files.size(input);
+		try (ZipFile zip = new ZipFile(input.toFile())) {
+			long cost = BASE_COST;
+			for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+				ZipEntry entry = entries.nextElement();
+				cost += partCost(entry.getName(), entry.getSize() >= 0 ? entry.getSize() : entry.getCompressedSize());
+			}
+			return Math.max(cost, BASE_COST + size);
+		} catch (ZipException e) {
+			return BASE_COST + size * MARKDOWN_FACTOR;
+		}
+	}
+
+	/** As {@link #estimate(Path)}, for input already in memory; walks the zip central directory by hand. */
+	long estimate(byte[] input) {
+		ByteBuffer buf = ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN);
+		// The end record is followed only by a comment of up to 64 KB
+		int floor = Math.max(0, input.length - ZIP_END_SIZE - 0xffff);
+		int end = input.length - ZIP_END_SIZE;
+		while (end >= floor && buf.getInt(end) != ZIP_END) {
+			end--;
+		}
+		if (end < floor) {
+			return BASE_COST + (long) input.length * MARKDOWN_FACTOR;
+		}
+		long cost = BASE_COST;
+		int entries = Short.toUnsignedInt(buf.getShort(end + 10));
+		long pos = Integer.toUnsignedLong(buf.getInt(end + 16));
+		for (int i = 0; i < entries && pos + ZIP_ENTRY_SIZE <= end; i++) {
+			int at = (int) pos;
+			if (buf.getInt(at) != ZIP_ENTRY) {
+				break;
+			}
+			long compressed = Integer.toUnsignedLong(buf.getInt(at + 20));
+			long size = Integer.toUnsignedLong(buf.getInt(at + 24));
+			int nameLength = Short.toUnsignedInt(buf.getShort(at + 28));
+			int extraLength = Short.toUnsignedInt(buf.getShort(at + 30));
+			int commentLength = Short.toUnsignedInt(buf.getShort(at + 32));
+			if (at + ZIP_ENTRY_SIZE + nameLength > input.length) {
+				break;
+			}
+			String name = new String(input, at + ZIP_ENTRY_SIZE, nameLength, StandardCharsets.UTF_8);
+			// Zip64 sizes live in the extra field; the compressed size is a floor then
+			cost += partCost(name, size != 0xffffffffL ? size : compressed);
+			pos += ZIP_ENTRY_SIZE + nameLength + extraLength + commentLength;
+		}
+		return Math.max(cost, BASE_COST + input.length);
+	}
+
+	private static long partCost(String name, long size) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		return size * (lower.endsWith(".xml") || lower.endsWith(".rels") ? XML_FACTOR : MEDIA_FACTOR);
+	}
+
+	/**
+	 * Waits until a job of {@code cost} bytes may run, then reserves it and starts
+	 * its deadline on the calling thread. Close the permit on the same thread.
+	 */
+	Permit admit(long cost) throws InterruptedIOException {
+		return admit(cost, 0);
+	}
+
+	/**
+	 * As above, for a job already holding {@code held} bytes of its input, which
+	 * {@code cost} includes. Those count against the budget while the job waits.
+	 */
+	Permit admit(long cost, long held) throws InterruptedIOException {
+		long deadline = deadlineMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis) : 0;
+		synchronized (this) {
+			Ticket ticket = new Ticket(cost, sequence++);
+			waiting.add(ticket);
+			heldBytes += held;
+			boolean admitted = false;
+			try {
+				// Its own held bytes are part of its cost, not extra
+				while (waiting.peek() != ticket || running > 0 && reservedBytes + heldBytes - held + cost > budgetBytes) {
+					if (deadline == 0) {
+						wait();
+						continue;
+					}
+					long left = deadline - System.nanoTime();
+					if (left <= 0) {
+						throw new InterruptedIOException("Deadline of " + deadlineMillis + " ms passed while queued for "
+							+ (cost >> 20) + " MB of heap");
+					}
+					TimeUnit.NANOSECONDS.timedWait(this, left);
+				}
+				admitted = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while queued for heap");
+			} finally {
+				waiting.remove(ticket);
+				heldBytes -= held;
+				// Either the next ticket is now first, or it may fit beside this one
+				notifyAll();
+				if (admitted) {
+					reservedBytes += cost;
+					running++;
+				}
+			}
+		}
+		return new Permit(cost, deadline);
+	}
+
+	/** The calling thread's deadline, for threads working on the same conversion; {@code null} for none. */
+	static Long currentDeadline() {
+		return DEADLINE.get();
+	}
+
+	/** Runs {@code task} on the calling thread under a deadline from {@link #currentDeadline}. */
+	static <T> T callWithDeadline(Long deadline, DeadlineTask<T> task) throws IOException {
+		Long previous = DEADLINE.get();
+		setDeadline(deadline);
+		try {
+			return task.call();
+		} finally {
+			setDeadline(previous);
+		}
+	}
+
+	private static void setDeadline(Long deadline) {
+		if (deadline != null) {
+			DEADLINE.set(deadline);
+		} else {
+			DEADLINE.remove();
+		}
+	}
+
+	/**
+	 * Throws when the calling thread's conversion is past its deadline or the
+	 * thread was interrupted. Converters call it between stages.
+	 */
+	static void checkDeadline(String stage) throws InterruptedIOException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("Interrupted before stage " + stage);
+		}
+		Long deadline = DEADLINE.get();
+		if (deadline != null && System.nanoTime() - deadline >= 0) {
+			throw new InterruptedIOException("Deadline passed before stage " + stage);
+		}
+	}
+
+	synchronized int queued() {
+		return waiting.size();
+	}
+
+	public long getBudgetBytes() {
+		return budgetBytes;
+	}
+
+	public long getDeadlineMillis() {
+		return deadlineMillis;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Scheduler: " + running + " running (" + (reservedBytes >> 20) + " of " + (budgetBytes >> 20)
+			+ " MB reserved), " + waiting.size() + " queued (" + (heldBytes >> 20) + " MB buffered)";
+	}
+
+	/** Work that {@link #callWithDeadline} runs. */
+	interface DeadlineTask<T> {
+
+		T call() throws IOException;
+	}
+
+	private static final class Ticket {
+
+		final long cost;
+		final long sequence;
+
+		Ticket(long cost, long sequence) {
+			this.cost = cost;
+			this.sequence = sequence;
+		}
+	}
+
+	/** One admitted job; closing it returns its reservation and clears its deadline. */
+	final class Permit implements AutoCloseable {
+
+		private final long cost;
+		private final Long previousDeadline = DEADLINE.get();
+
+		private Permit(long cost, long deadline) {
+			this.cost = cost;
+			if (deadline != 0) {
+				DEADLINE.set(deadline);
+			}
+		}
+
+		@Override
+		public void close() {
+			setDeadline(previousDeadline);
+			synchronized (ConversionScheduler.this) {
+				reservedBytes -= cost;
+				running--;
+				ConversionScheduler.this.notifyAll();
+			}
+		}
+	}
+
+	private final class ScheduledConverter implements DocumentConverter {
+
+		private final DocumentConverter delegate;
+
+		ScheduledConverter(DocumentConverter delegate) {
+			this.delegate = Objects.requireNonNull(delegate, "delegate");
+		}
+
+		/** The input is read whole to size it; it waits as held bytes, see the class comment. */
+		@Override
+		public void convert(InputStream in, OutputStream out) throws IOException {
+			byte[] input = in.readAllBytes();
+			try (Permit permit = admit(estimate(input), input.length)) {
+				delegate.convert(new ByteArrayInputStream(input), out);
+			}
+		}
+
+		@Override
+		public void convert(Path input, Path output) throws IOException {
+			try (Permit permit = admit(estimate(input))) {
+				delegate.convert(input, output);
+			}
+		}
+
+		@Override
+		public String cacheKey(Path output) {
+			return delegate.cacheKey(output);
+		}
+
+		@Override
+		public boolean writesAssets() {
+			return delegate.writesAssets();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package com.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resident HTTP front end for the converters, on the JDK's built-in server.
+ * {@code POST /docx-to-md} and {@code POST /md-to-docx} take the document as the
+ * request body and answer with the converted bytes; {@code GET /health} answers
+ * {@code ok}.
+ *
+ * <p>Requests run on virtual threads when the runtime has them (Java 21+) and on
+ * a cached pool otherwise, so waiting requests and {@code /health} never queue
+ * behind running conversions. At most {@code maxConcurrent} conversions run at
+ * once; a request that cannot get a slot within {@code queueTimeoutMillis} is
+ * answered with 503, as is one that misses a {@link ConversionScheduler}
+ * deadline. A body over {@code maxBodyBytes} is answered with 413 and is only
+ * read once the request holds a slot.
+ */
+public class ConversionServer {
+
+	static final String DOCX_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+	static final String MARKDOWN_TYPE = "text/markdown; charset=utf-8";
+	static final long DEFAULT_MAX_BODY_BYTES = 64L * 1024 * 1024;
+	/** Largest body one array holds. */
+	private static final long MAX_ARRAY_BYTES = Integer.MAX_VALUE - 8;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Semaphore slots;
+	private final long queueTimeoutMillis;
+	private final long maxBodyBytes;
+
+	public ConversionServer(InetSocketAddress address, DocumentConverter docxToMarkdown, DocumentConverter markdownToDocx,
+							int maxConcurrent, long queueTimeoutMillis) throws IOException {
+		this(address, docxToMarkdown, markdownToDocx, maxConcurrent, queueTimeoutMillis, DEFAULT_MAX_BODY_BYTES);
+	}
+
+	public ConversionServer(InetSocketAddress address, DocumentConverter docxToMarkdown, DocumentConverter markdownToDocx,
+							int maxConcurrent, long queueTimeoutMillis, long maxBodyBytes) throws IOException {
+		Objects.requireNonNull(docxToMarkdown, "docxToMarkdown");
+		Objects.requireNonNull(markdownToDocx, "markdownToDocx");
+		if (maxConcurrent < 1) {
+			throw new IllegalArgumentException("maxConcurrent must be at least 1: " + maxConcurrent);
+		}
+		if (maxBodyBytes < 1 || maxBodyBytes > MAX_ARRAY_BYTES) {
+			throw new IllegalArgumentException("maxBodyBytes must be between 1 and " + MAX_ARRAY_BYTES + ": " + maxBodyBytes);
+		}
+		this.slots = new Semaphore(maxConcurrent, true);
+		this.queueTimeoutMillis = queueTimeoutMillis;
+		this.maxBodyBytes = maxBodyBytes;
+		this.executor = newRequestExecutor();
+		this.server = HttpServer.create(address, 0);
+		server.createContext("/docx-to-md", new ConvertHandler("/docx-to-md", docxToMarkdown, MARKDOWN_TYPE));
+		server.createContext("/md-to-docx", new ConvertHandler("/md-to-docx", markdownToDocx, DOCX_TYPE));
+		server.createContext("/health", exchange -> {
+			try {
+				send(exchange, 200, "ok\n");
+			} finally {
+				exchange.close();
+			}
+		});
+		server.setExecutor(executor);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/** Stops accepting, gives in-flight requests up to {@code graceSeconds}, then shuts the workers down. */
+	public void stop(int graceSeconds) {
+		server.stop(graceSeconds);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(graceSeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executor.shutdownNow();
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * A virtual thread per request when available, else a cached pool of platform
+	 * threads. Neither limits anything: the slots do, so a full pool cannot hold
+	 * back the queue timeout or {@code /health}.
+	 */
+	static ExecutorService newRequestExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			AtomicInteger id = new AtomicInteger();
+			return Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "convert-http-" + id.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	private final class ConvertHandler implements HttpHandler {
+
+		private final String path;
+		private final DocumentConverter converter;
+		private final String contentType;
+
+		ConvertHandler(String path, DocumentConverter converter, String contentType) {
+			this.path = path;
+			this.converter = converter;
+			this.contentType = contentType;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!path.equals(exchange.getRequestURI().getPath())) {
+					send(exchange, 404, "Not found\n");
+					return;
+				}
+				if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+					exchange.getResponseHeaders().set("Allow", "POST");
+					send(exchange, 405, "Use POST\n");
+					return;
+				}
+				if (declaredLength(exchange) > maxBodyBytes) {
+					send(exchange, 413, "Body larger than " + maxBodyBytes + " bytes\n");
+					return;
+				}
+				if (!acquire()) {
+					exchange.getResponseHeaders().set("Retry-After", "1");
+					send(exchange, 503, "Too many conversions in progress\n");
+					return;
+				}
+				ByteArrayOutputStream result = new ByteArrayOutputStream();
+				try (InputStream body = exchange.getRequestBody()) {
+					// Chunked bodies declare no length, so the limit holds while reading too
+					byte[] input = body.readNBytes((int) maxBodyBytes + 1);
+					if (input.length > maxBodyBytes) {
+						send(exchange, 413, "Body larger than " + maxBodyBytes + " bytes\n");
+						return;
+					}
+					converter.convert(new ByteArrayInputStream(input), result);
+				} catch (InterruptedIOException e) {
+					// Past its scheduler deadline; the client may try again when it is quieter
+					send(exchange, 503, "Conversion not finished in time: " + e.getMessage() + "\n");
+					return;
+				} catch (Exception e) {
+					// Buffered, so a failed conversion can still get a proper status
+					send(exchange, 500, "Conversion failed: " + e + "\n");
+					return;
+				} finally {
+					slots.release();
+				}
+				exchange.getResponseHeaders().set("Content-Type", contentType);
+				exchange.sendResponseHeaders(200, result.size());
+				try (OutputStream out = exchange.getResponseBody()) {
+					result.writeTo(out);
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/** The Content-Length header, or -1 without one. */
+	private static long declaredLength(HttpExchange exchange) {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (length == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(length.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private boolean acquire() {
+		try {
+			return slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+}
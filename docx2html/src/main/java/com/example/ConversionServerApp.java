@@ -0,0 +1,101 @@
+package com.example;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs {@link ConversionServer} until the process is stopped, so callers post
+ * documents to a warm JVM instead of launching one per file.
+ */
+public class ConversionServerApp {
+
+	public static void main(String[] args) throws InterruptedException {
+		String host = "127.0.0.1";
+		int port = 8088;
+		int maxConcurrent = Runtime.getRuntime().availableProcessors();
+		long queueTimeoutMillis = 30_000;
+		long maxBodyMb = ConversionServer.DEFAULT_MAX_BODY_BYTES >> 20;
+		long cacheMb = -1;
+		Path cacheDir = null;
+		long heapBudgetMb = -1;
+		long deadlineMillis = -1;
+		DocxToMarkdownOptions options = DocxToMarkdownOptions.create();
+		try {
+			for (String arg : args) {
+				if (arg.startsWith("--host=")) {
+					host = arg.substring("--host=".length());
+				} else if (arg.startsWith("--port=")) {
+					port = Arguments.intValue("--port", arg.substring("--port=".length()), 0, 65535);
+				} else if (arg.startsWith("--max-concurrent=")) {
+					maxConcurrent = Arguments.intValue("--max-concurrent", arg.substring("--max-concurrent=".length()), 1, Integer.MAX_VALUE);
+				} else if (arg.startsWith("--queue-timeout-ms=")) {
+					queueTimeoutMillis = Arguments.longValue("--queue-timeout-ms", arg.substring("--queue-timeout-ms=".length()), 0);
+				} else if (arg.startsWith("--max-body-mb=")) {
+					maxBodyMb = Arguments.intValue("--max-body-mb", arg.substring("--max-body-mb=".length()), 1, 2047);
+				} else if (arg.startsWith("--cache-mb=")) {
+					cacheMb = Arguments.longValue("--cache-mb", arg.substring("--cache-mb=".length()), 0);
+				} else if (arg.startsWith("--cache-dir=")) {
+					cacheDir = Paths.get(arg.substring("--cache-dir=".length())).toAbsolutePath().normalize();
+				} else if (arg.startsWith("--heap-budget-mb=")) {
+					heapBudgetMb = Arguments.longValue("--heap-budget-mb", arg.substring("--heap-budget-mb=".length()), 1);
+				} else if (arg.startsWith("--deadline-ms=")) {
+					deadlineMillis = Arguments.longValue("--deadline-ms", arg.substring("--deadline-ms=".length()), 0);
+				} else if (arg.equals("--help")) {
+					printUsage();
+					return;
+				} else {
+					options.engine(Arguments.enumValue("engine", MarkdownEngine.class, arg));
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+			return;
+		}
+
+		DocumentConverter docxToMarkdown = new DocxToMarkdownConverter(options);
+		DocumentConverter markdownToDocx = new MarkdownToDocxConverter();
+		if (heapBudgetMb >= 0 || deadlineMillis >= 0) {
+			// Inside the cache, so hits are answered without queueing
+			ConversionScheduler scheduler = new ConversionScheduler(
+				heapBudgetMb >= 0 ? heapBudgetMb * 1024 * 1024 : ConversionScheduler.defaultBudget(), Math.max(deadlineMillis, 0));
+			docxToMarkdown = scheduler.wrap(docxToMarkdown);
+			markdownToDocx = scheduler.wrap(markdownToDocx);
+		}
+		if (cacheMb >= 0 || cacheDir != null) {
+			ConversionCache cache = new ConversionCache((cacheMb >= 0 ? cacheMb : 64) * 1024 * 1024, cacheDir);
+			docxToMarkdown = new CachingConverter(docxToMarkdown, cache);
+			markdownToDocx = new CachingConverter(markdownToDocx, cache);
+		}
+
+		ConversionServer server;
+		try {
+			server = new ConversionServer(new InetSocketAddress(host, port), docxToMarkdown, markdownToDocx,
+				maxConcurrent, queueTimeoutMillis, maxBodyMb * 1024 * 1024);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+
+		CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop(5);
+			stopped.countDown();
+		}, "convert-http-shutdown"));
+		server.start();
+		System.out.println("Listening on http://" + host + ":" + server.getAddress().getPort()
+			+ " (max " + maxConcurrent + " concurrent conversions)");
+		stopped.await();
+	}
+
+	private static void printUsage() {
+		System.out.println("Usage: java -cp build/libs/* com.example.ConversionServerApp [--host=127.0.0.1] [--port=8088]"
+			+ " [--max-concurrent=<n>] [--queue-timeout-ms=30000] [--max-body-mb=64] [--cache-mb=<n>] [--cache-dir=<dir>]"
+			+ " [--heap-budget-mb=<n>] [--deadline-ms=<n>] [xhtml|direct|streaming]");
+		System.out.println("Endpoints: POST /docx-to-md, POST /md-to-docx, GET /health");
+	}
+}
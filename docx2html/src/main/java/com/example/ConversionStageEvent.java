@@ -0,0 +1,43 @@
+package com.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event per conversion stage, plus one with stage {@code total} per
+ * conversion. Shows up in JDK Mission Control under "docx2html" when a
+ * recording is running; costs next to nothing otherwise.
+ */
+@Name("com.example.ConversionStage")
+@Label("Conversion Stage")
+@Category("docx2html")
+@Description("One stage of a DOCX/Markdown conversion")
+@StackTrace(false)
+class ConversionStageEvent extends Event {
+
+	@Label("Converter")
+	String converter;
+
+	@Label("Source")
+	String source;
+
+	@Label("Stage")
+	String stage;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocatedBytes;
+
+	@Label("Input Size")
+	@DataAmount
+	long inputBytes;
+
+	@Label("Output Size")
+	@DataAmount
+	long outputBytes;
+}
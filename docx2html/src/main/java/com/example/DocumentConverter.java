@@ -0,0 +1,52 @@
+package com.example;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * A configured, reusable conversion. Implementations are immutable and safe to
+ * share between threads; build one per set of options and keep it for the life
+ * of the process so parser and renderer setup is paid once.
+ */
+public interface DocumentConverter {
+
+	/** Reads the whole source document from {@code in} and writes the result to {@code out}. Neither stream is closed. */
+	void convert(InputStream in, OutputStream out) throws IOException;
+
+	/** Converts a file, creating the output's parent directories. */
+	default void convert(Path input, Path output) throws IOException {
+		Objects.requireNonNull(input, "input");
+		Objects.requireNonNull(output, "output");
+		Path parent = output.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (InputStream in = Files.newInputStream(input);
+			 OutputStream out = new FileOutputStream(output.toFile())) {
+			convert(in, out);
+		}
+	}
+
+	/**
+	 * Everything besides the input bytes that shapes the result of converting to
+	 * {@code output} ({@code null} for the stream form). Two calls with equal keys
+	 * and equal input must produce equal bytes; {@link CachingConverter} relies on it.
+	 * Returns {@code null} when the settings cannot be named, which turns caching off.
+	 */
+	default String cacheKey(Path output) {
+		return getClass().getName();
+	}
+
+	/**
+	 * Whether a conversion writes files besides its output, such as extracted
+	 * images. {@link CachingConverter} only keeps the output, so it does not cache these.
+	 */
+	default boolean writesAssets() {
+		return false;
+	}
+}
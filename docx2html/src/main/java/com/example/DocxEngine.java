@@ -0,0 +1,13 @@
+package com.example;
+
+/**
+ * Selects how {@link MdToDocxApp} turns Markdown into a DOCX file.
+ */
+public enum DocxEngine {
+
+	/** flexmark renders HTML, jsoup parses it, then the elements become paragraphs. */
+	HTML,
+
+	/** Builds paragraphs and runs straight from the flexmark AST, see {@link MarkdownXwpfWriter}. */
+	DIRECT
+}
@@ -0,0 +1,93 @@
+package com.example;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTFonts;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTPPrGeneral;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTPageMar;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTPageSz;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTRPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTSectPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTStyle;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTStyles;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STStyleType;
+
+import java.math.BigInteger;
+
+/**
+ * Styles part and page setup for the DOCX files written from Markdown. Body
+ * size, heading size and weight, and the code font live here once, so runs only
+ * carry the bold, italic and underline that differ from their paragraph.
+ */
+final class DocxStyles {
+
+	static final String NORMAL = "Normal";
+	static final String CODE = "Code";
+
+	private static final int BODY_POINTS = 12;
+	private static final int[] HEADING_POINTS = {26, 22, 18, 16, 14, 12};
+
+	/** Paragraph style id for a heading level, clamped to 1-6. */
+	static String heading(int level) {
+		return "Heading" + Math.min(Math.max(level, 1), HEADING_POINTS.length);
+	}
+
+	static void apply(XWPFDocument xdoc) {
+		CTStyles styles = CTStyles.Factory.newInstance();
+		size(styles.addNewDocDefaults().addNewRPrDefault().addNewRPr(), BODY_POINTS);
+
+		CTStyle normal = style(styles, STStyleType.PARAGRAPH, NORMAL, "Normal");
+		normal.setDefault(Boolean.TRUE);
+
+		for (int level = 1; level <= HEADING_POINTS.length; level++) {
+			CTStyle heading = style(styles, STStyleType.PARAGRAPH, heading(level), "heading " + level);
+			heading.addNewBasedOn().setVal(NORMAL);
+			heading.addNewNext().setVal(NORMAL);
+			CTPPrGeneral pPr = heading.addNewPPr();
+			pPr.addNewKeepNext();
+			pPr.addNewOutlineLvl().setVal(BigInteger.valueOf(level - 1));
+			CTRPr rPr = heading.addNewRPr();
+			rPr.addNewB();
+			size(rPr, HEADING_POINTS[level - 1]);
+		}
+
+		CTStyle code = style(styles, STStyleType.CHARACTER, CODE, "Code");
+		CTFonts codeFonts = code.addNewRPr().addNewRFonts();
+		codeFonts.setAscii("Courier New");
+		codeFonts.setHAnsi("Courier New");
+		codeFonts.setCs("Courier New");
+
+		xdoc.createStyles().setStyles(styles);
+
+		// A4 with one-inch margins; XHTMLConverter also refuses bodies without a section
+		CTSectPr sectPr = xdoc.getDocument().getBody().addNewSectPr();
+		CTPageSz pageSize = sectPr.addNewPgSz();
+		pageSize.setW(BigInteger.valueOf(11906));
+		pageSize.setH(BigInteger.valueOf(16838));
+		CTPageMar margins = sectPr.addNewPgMar();
+		margins.setTop(BigInteger.valueOf(1440));
+		margins.setBottom(BigInteger.valueOf(1440));
+		margins.setLeft(BigInteger.valueOf(1440));
+		margins.setRight(BigInteger.valueOf(1440));
+		margins.setHeader(BigInteger.valueOf(720));
+		margins.setFooter(BigInteger.valueOf(720));
+		margins.setGutter(BigInteger.ZERO);
+	}
+
+	private static CTStyle style(CTStyles styles, STStyleType.Enum type, String id, String name) {
+		CTStyle style = styles.addNewStyle();
+		style.setType(type);
+		style.setStyleId(id);
+		style.addNewName().setVal(name);
+		style.addNewQFormat();
+		return style;
+	}
+
+	private static void size(CTRPr rPr, int points) {
+		BigInteger halfPoints = BigInteger.valueOf(points * 2L);
+		rPr.addNewSz().setVal(halfPoints);
+		rPr.addNewSzCs().setVal(halfPoints);
+	}
+
+	private DocxStyles() {
+	}
+}
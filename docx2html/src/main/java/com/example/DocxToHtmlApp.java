@@ -3,156 +3,169 @@ package com.example;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFPictureData;
 import org.apache.poi.xwpf.usermodel.XWPFTable;
-import fr.opensagres.poi.xwpf.converter.xhtml.XHTMLConverter;
-import fr.opensagres.poi.xwpf.converter.xhtml.XHTMLOptions;
-import fr.opensagres.poi.xwpf.converter.core.BasicURIResolver;
-import fr.opensagres.poi.xwpf.converter.core.FileImageExtractor;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.nodes.TextNode;
 import org.jsoup.select.Elements;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTblGridCol;
-import com.vladsch.flexmark.html2md.converter.FlexmarkHtmlConverter;
 
-import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Base64;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.UUID;
 
 public class DocxToHtmlApp {
 
-	private static final int A4_WIDTH_PX = 794; // ~8.27in * 96dpi
-
 	public static void main(String[] args) {
+		int status = run(args);
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/** The command line behind {@link #main}; returns the exit status instead of exiting. */
+	static int run(String[] args) {
 		if (args.length < 2) {
-			System.out.println("Usage: java -jar docx2html.jar <input.docx> <output.md>");
-			System.out.println("Or with Gradle: gradle run -PappArgs=\"[/abs/input.docx,/abs/output.md]\"");
-			return;
+			printUsage();
+			return 0;
 		}
 
 		Path inputPath = Paths.get(args[0]).toAbsolutePath().normalize();
 		Path outputPath = Paths.get(args[1]).toAbsolutePath().normalize();
-
+		DocxToMarkdownOptions options = DocxToMarkdownOptions.create();
+		Path metricsPath = null;
 		try {
-			convertDocxToMarkdown(inputPath, outputPath);
+			for (int i = 2; i < args.length; i++) {
+				if (args[i].startsWith("--assets=")) {
+					options.imageAssetsDir(Paths.get(args[i].substring("--assets=".length())).toAbsolutePath().normalize());
+				} else if (args[i].startsWith("--metrics=")) {
+					metricsPath = Paths.get(args[i].substring("--metrics=".length())).toAbsolutePath().normalize();
+				} else if (args[i].equals("--shared-styles")) {
+					options.sharedStyles(true);
+				} else if (args[i].equals("--optimize-images")) {
+					options.optimizeImages(true);
+				} else if (args[i].startsWith("--optimize-images=")) {
+					options.optimizeImages(true).imageQuality(
+						Arguments.floatValue("--optimize-images", args[i].substring("--optimize-images=".length())));
+				} else {
+					options.engine(Arguments.enumValue("engine", MarkdownEngine.class, args[i]));
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			return 2;
+		}
+
+		try (Writer metrics = metricsPath != null ? Files.newBufferedWriter(metricsPath, StandardCharsets.UTF_8,
+			StandardOpenOption.CREATE, StandardOpenOption.APPEND) : null) {
+			if (metrics != null) {
+				options.listener(ConversionListener.jsonLines(metrics));
+			}
+			convertDocxToMarkdown(inputPath, outputPath, options);
 			System.out.println("Converted: " + inputPath + " -> " + outputPath);
+			return 0;
 		} catch (Exception e) {
 			e.printStackTrace();
-			System.exit(1);
+			return 1;
 		}
 	}
 
+	private static void printUsage() {
+		System.out.println("Usage: java -jar docx2html.jar <input.docx> <output.md> [xhtml|direct|streaming] [--assets=<dir>] [--shared-styles] [--optimize-images[=<quality>]] [--metrics=<file.jsonl>]");
+		System.out.println("Or with Gradle: gradle run -PappArgs=\"[/abs/input.docx,/abs/output.md]\"");
+	}
+
 	public static void convertDocxToMarkdown(Path inputDocxPath, Path outputMdPath) throws Exception {
 		Objects.requireNonNull(inputDocxPath, "inputDocxPath");
 		Objects.requireNonNull(outputMdPath, "outputMdPath");
+		DefaultConverter.INSTANCE.convert(inputDocxPath, outputMdPath);
+	}
 
-		Files.createDirectories(outputMdPath.getParent());
-
-		Path tempImagesDir = outputMdPath.getParent().resolve("images-" + UUID.randomUUID());
-		Files.createDirectories(tempImagesDir);
-
-		try (InputStream inputStream = new FileInputStream(inputDocxPath.toFile());
-			 XWPFDocument document = new XWPFDocument(inputStream)) {
-
-			XHTMLOptions options = XHTMLOptions.create();
-			options.setIgnoreStylesIfUnused(false);
-			options.setFragment(false);
-			options.setExtractor(new FileImageExtractor(tempImagesDir.toFile()));
-			options.URIResolver(new BasicURIResolver(tempImagesDir.getFileName().toString()));
-
-			ByteArrayOutputStream htmlOut = new ByteArrayOutputStream();
-			XHTMLConverter.getInstance().convert(document, htmlOut, options);
-
-			String html = new String(htmlOut.toByteArray(), StandardCharsets.UTF_8);
-			html = ensureMetaUtf8(html);
-			html = embedImagesAsBase64(html, document.getAllPictures());
-			html = enhanceTables(html, document);
-			html = enhanceImages(html);
-
-			// Replace tables and images with tokens to preserve as raw HTML in Markdown
-			PlaceholderStore store = replaceTablesAndImagesWithTokens(html);
+	public static void convertDocxToMarkdown(Path inputDocxPath, Path outputMdPath, MarkdownEngine engine) throws Exception {
+		convertDocxToMarkdown(inputDocxPath, outputMdPath, DocxToMarkdownOptions.create().engine(engine));
+	}
 
-			String markdown = FlexmarkHtmlConverter.builder().build().convert(store.tokenizedHtml);
+	/** One-off conversion; callers converting many files should keep a {@link DocxToMarkdownConverter}. */
+	public static void convertDocxToMarkdown(Path inputDocxPath, Path outputMdPath, DocxToMarkdownOptions options) throws Exception {
+		Objects.requireNonNull(inputDocxPath, "inputDocxPath");
+		Objects.requireNonNull(outputMdPath, "outputMdPath");
+		Objects.requireNonNull(options, "options");
+		new DocxToMarkdownConverter(options).convert(inputDocxPath, outputMdPath);
+	}
 
-			// Replace tokens with raw HTML blocks to keep centering and width styles
-			for (Map.Entry<String, String> entry : store.tokenToHtml.entrySet()) {
-				markdown = markdown.replace(entry.getKey(), entry.getValue());
-			}
+	/** Built on first use; only the two-argument entry point needs it. */
+	private static final class DefaultConverter {
+		static final DocxToMarkdownConverter INSTANCE = new DocxToMarkdownConverter(DocxToMarkdownOptions.create());
+	}
 
-			try (OutputStream os = new FileOutputStream(outputMdPath.toFile());
-				 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
-				writer.write(markdown);
-			}
-		} finally {
-			deleteDirectoryQuietly(tempImagesDir);
-		}
+	/**
+	 * The built-in passes, in the order they have always run. Returns a fresh
+	 * pipeline so callers can {@link HtmlPipeline#add} their own passes.
+	 */
+	public static HtmlPipeline defaultPipeline() {
+		return new HtmlPipeline()
+			.add((html, context) -> ensureMetaUtf8(html))
+			.add((html, context) -> embedImages(html, context.getSource().getAllPictures(), context.getImages()))
+			.add((html, context) -> enhanceTables(html, context.getSource(), context.isSharedStyles()))
+			.add((html, context) -> enhanceImages(html, context.isSharedStyles()));
 	}
 
-	private static String ensureMetaUtf8(String html) {
-		Document doc = Jsoup.parse(html);
+	private static void ensureMetaUtf8(Document doc) {
 		Element head = doc.head();
 		boolean hasMeta = head.select("meta[charset]").stream().anyMatch(e -> "utf-8".equalsIgnoreCase(e.attr("charset")));
 		if (!hasMeta) {
 			head.prepend("<meta charset=\"UTF-8\">");
 		}
-		return doc.outerHtml();
 	}
 
-	private static String embedImagesAsBase64(String html, List<XWPFPictureData> pictures) throws IOException {
+	static void embedImages(Document doc, List<XWPFPictureData> pictures, ImageOutput images) throws IOException {
 		if (pictures == null || pictures.isEmpty()) {
-			return html;
+			return;
 		}
 
-		Document doc = Jsoup.parse(html);
-		Elements imgElements = doc.getElementsByTag("img");
+		Map<String, XWPFPictureData> picturesByFileName = new HashMap<>();
+		for (XWPFPictureData pic : pictures) {
+			picturesByFileName.putIfAbsent(pic.getFileName(), pic);
+		}
 
-		for (Element img : imgElements) {
+		for (Element img : doc.getElementsByTag("img")) {
 			String src = img.attr("src");
 			if (src == null || src.isEmpty()) {
 				continue;
 			}
-			for (XWPFPictureData pic : pictures) {
-				String fileName = pic.getFileName();
-				if (src.endsWith(fileName)) {
-					String extension = pic.suggestFileExtension();
-					String base64 = Base64.getEncoder().encodeToString(pic.getData());
-					String dataUri = "data:image/" + extension + ";base64," + base64;
-					img.attr("src", dataUri);
-					break;
-				}
+			XWPFPictureData pic = picturesByFileName.get(src.substring(src.lastIndexOf('/') + 1));
+			if (pic != null) {
+				img.attr("src", images.src(pic.getPackagePart()));
 			}
 		}
-		return doc.outerHtml();
 	}
 
-	private static String enhanceImages(String html) {
-		Document doc = Jsoup.parse(html);
+	private static void enhanceImages(Document doc, boolean sharedStyles) {
 		Elements imgs = doc.getElementsByTag("img");
 		for (Element img : imgs) {
-			appendInlineStyle(img, "display:block;margin:0 auto;max-width:" + A4_WIDTH_PX + "px;width:100%;height:auto;");
+			if (sharedStyles) {
+				img.addClass(HtmlStyles.IMAGE_CLASS);
+			} else {
+				appendInlineStyle(img, HtmlStyles.IMAGE);
+			}
 		}
-		return doc.outerHtml();
 	}
 
-	private static String enhanceTables(String html, XWPFDocument xwpfDocument) {
-		Document doc = Jsoup.parse(html);
+	static void enhanceTables(Document doc, XWPFDocument xwpfDocument) {
+		enhanceTables(doc, xwpfDocument, false);
+	}
+
+	/** With {@code sharedStyles} tables get a class and cells are left alone; see {@link HtmlStyles#STYLESHEET}. */
+	static void enhanceTables(Document doc, XWPFDocument xwpfDocument, boolean sharedStyles) {
 		Elements htmlTables = doc.getElementsByTag("table");
 		List<XWPFTable> xwpfTables = xwpfDocument.getTables();
 
@@ -162,9 +175,11 @@ public class DocxToHtmlApp {
 			XWPFTable xTable = xwpfTables.get(i);
 
 			// Center table and fit A4 width
-			appendInlineStyle(htmlTable, "border-collapse:collapse;table-layout:fixed;" +
-				"margin-left:auto;margin-right:auto;" +
-				"max-width:" + A4_WIDTH_PX + "px;width:100%;box-sizing:border-box;");
+			if (sharedStyles) {
+				htmlTable.addClass(HtmlStyles.TABLE_CLASS);
+			} else {
+				appendInlineStyle(htmlTable, HtmlStyles.TABLE);
+			}
 
 			List<Integer> colWidthsPx = extractColumnWidthsPx(xTable);
 			if (!colWidthsPx.isEmpty()) {
@@ -179,14 +194,16 @@ public class DocxToHtmlApp {
 				htmlTable.prependChild(colgroup);
 			}
 
+			if (sharedStyles) {
+				continue;
+			}
+
 			// Add inline styles to cells to ensure visible borders/padding
 			Elements cells = htmlTable.select("td, th");
 			for (Element cell : cells) {
-				appendInlineStyle(cell, "border:1px solid #ccc;padding:4px;word-break:break-word;white-space:normal;overflow-wrap:anywhere;");
+				appendInlineStyle(cell, HtmlStyles.CELL);
 			}
 		}
-
-		return doc.outerHtml();
 	}
 
 	private static void appendInlineStyle(Element el, String styleToAppend) {
@@ -198,7 +215,7 @@ public class DocxToHtmlApp {
 		el.attr("style", style);
 	}
 
-	private static List<Integer> extractColumnWidthsPx(XWPFTable table) {
+	static List<Integer> extractColumnWidthsPx(XWPFTable table) {
 		List<Integer> widthsPx = new ArrayList<>();
 		if (table == null || table.getCTTbl() == null || table.getCTTbl().getTblGrid() == null) {
 			return widthsPx;
@@ -222,8 +239,7 @@ public class DocxToHtmlApp {
 						continue;
 					}
 				}
-				int px = (int) Math.round(twips / 15.0); // 1 px ≈ 15 twips (96 dpi)
-				widthsPx.add(Math.max(px, 1));
+				widthsPx.add(twipsToPx(twips));
 			} else {
 				widthsPx.add(null);
 			}
@@ -231,53 +247,8 @@ public class DocxToHtmlApp {
 		return widthsPx;
 	}
 
-	private static PlaceholderStore replaceTablesAndImagesWithTokens(String html) {
-		Document doc = Jsoup.parse(html);
-		Map<String, String> tokenToHtml = new LinkedHashMap<>();
-		int tableIdx = 0;
-		int imgIdx = 0;
-
-		// Tables -> token
-		for (Element table : new ArrayList<>(doc.getElementsByTag("table"))) {
-			String token = "MDPH_TABLE_" + (tableIdx++);
-			String htmlBlock = table.outerHtml();
-			Element p = doc.createElement("p");
-			p.appendChild(new TextNode(token));
-			table.replaceWith(p);
-			tokenToHtml.put(token, htmlBlock);
-		}
-
-		// Images -> token (wrap in centered paragraph)
-		for (Element img : new ArrayList<>(doc.getElementsByTag("img"))) {
-			String token = "MDPH_IMG_" + (imgIdx++);
-			Element wrapper = doc.createElement("p");
-			wrapper.attr("style", "text-align:center;margin:8px 0;");
-			wrapper.appendChild(img.clone());
-			String htmlBlock = wrapper.outerHtml();
-			img.replaceWith(new TextNode(token));
-			tokenToHtml.put(token, htmlBlock);
-		}
-
-		PlaceholderStore store = new PlaceholderStore();
-		store.tokenizedHtml = doc.outerHtml();
-		store.tokenToHtml = tokenToHtml;
-		return store;
-	}
-
-	private static void deleteDirectoryQuietly(Path dir) {
-		if (dir == null) return;
-		try {
-			if (Files.notExists(dir)) return;
-			Files.walk(dir)
-				.sorted((a, b) -> b.getNameCount() - a.getNameCount())
-				.forEach(path -> {
-					try { Files.deleteIfExists(path); } catch (IOException ignored) {}
-				});
-		} catch (IOException ignored) {}
-	}
-
-	private static class PlaceholderStore {
-		String tokenizedHtml;
-		Map<String, String> tokenToHtml;
+	static int twipsToPx(long twips) {
+		int px = (int) Math.round(twips / 15.0); // 1 px ≈ 15 twips (96 dpi)
+		return Math.max(px, 1);
 	}
-}
\ No newline at end of file
+}
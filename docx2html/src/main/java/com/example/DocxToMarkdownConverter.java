@@ -0,0 +1,343 @@
+package com.example;
+
+import com.vladsch.flexmark.html2md.converter.FlexmarkHtmlConverter;
+import fr.opensagres.poi.xwpf.converter.xhtml.XHTMLConverter;
+import fr.opensagres.poi.xwpf.converter.xhtml.XHTMLOptions;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * DOCX to Markdown with the engine, passes and image handling fixed at
+ * construction. The html2md converter and XHTML options are built once and
+ * shared by every call; per-document state (the POI model, image caches) lives
+ * on the calling thread only. Passes in the pipeline must therefore be
+ * stateless, which the built-in ones are.
+ */
+public final class DocxToMarkdownConverter implements DocumentConverter {
+
+	private final MarkdownEngine engine;
+	private final HtmlPipeline pipeline;
+	private final String pipelineKey;
+	private final Path imageAssetsDir;
+	private final boolean sharedStyles;
+	private final ImageOptimizer imageOptimizer;
+	private final ConversionListener listener;
+	private final XHTMLOptions xhtmlOptions;
+	private final FlexmarkHtmlConverter htmlToMarkdown;
+
+	public DocxToMarkdownConverter(DocxToMarkdownOptions options) {
+		Objects.requireNonNull(options, "options");
+		this.engine = options.getEngine();
+		this.pipeline = new HtmlPipeline();
+		StringBuilder passKeys = new StringBuilder();
+		for (HtmlPass pass : options.getPipeline().getPasses()) {
+			pipeline.add(pass);
+			String key = pass.cacheKey();
+			// A class name would not do: two instances of one class can be set up differently
+			passKeys = passKeys != null && key != null ? passKeys.append(key).append(',') : null;
+		}
+		// The built-in passes are lambdas, so the default pipeline is named as a whole
+		this.pipelineKey = options.hasDefaultPipeline() ? "default" : passKeys != null ? passKeys.toString() : null;
+		this.imageAssetsDir = options.getImageAssetsDir();
+		this.sharedStyles = options.isSharedStyles();
+		this.imageOptimizer = options.isOptimizeImages()
+			? new ImageOptimizer(HtmlStyles.A4_WIDTH_PX, options.getImageQuality())
+			: null;
+		this.listener = options.getListener();
+
+		// Only the XHTML engine goes through HTML; the others skip loading its converters
+		this.xhtmlOptions = engine == MarkdownEngine.XHTML ? xhtmlOptions() : null;
+		this.htmlToMarkdown = engine == MarkdownEngine.XHTML ? FlexmarkHtmlConverter.builder().build() : null;
+	}
+
+	static XHTMLOptions xhtmlOptions() {
+		// No image extractor: the picture bytes already live in the POI package parts, and
+		// ImageOutput reads them from there. The converter still emits <img src="word/media/...">.
+		XHTMLOptions options = XHTMLOptions.create();
+		options.setIgnoreStylesIfUnused(false);
+		options.setFragment(false);
+		return options;
+	}
+
+	public MarkdownEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * With an assets directory configured, image links are relative to the
+	 * directory that contains it, i.e. the Markdown is assumed to sit beside it.
+	 */
+	@Override
+	public void convert(InputStream in, OutputStream out) throws IOException {
+		Objects.requireNonNull(in, "in");
+		Objects.requireNonNull(out, "out");
+		StageRecorder recorder = new StageRecorder(name(), null);
+		StageRecorder.CountingInputStream countedIn = new StageRecorder.CountingInputStream(in);
+		StageRecorder.CountingOutputStream countedOut = new StageRecorder.CountingOutputStream(out);
+		Throwable failure = null;
+		try {
+			Path markdownDir = imageAssetsDir != null ? imageAssetsDir.toAbsolutePath().getParent() : null;
+			Writer writer = new BufferedWriter(new OutputStreamWriter(countedOut, StandardCharsets.UTF_8));
+			if (engine == MarkdownEngine.STREAMING) {
+				OPCPackage pkg;
+				try (StageRecorder.Span span = recorder.start("open")) {
+					pkg = open(countedIn);
+					span.input(countedIn.getCount());
+				}
+				try {
+					writeStreaming(pkg, writer, markdownDir, recorder, countedOut);
+				} finally {
+					pkg.revert();
+				}
+			} else {
+				XWPFDocument document;
+				try (StageRecorder.Span span = recorder.start("load")) {
+					document = new XWPFDocument(countedIn);
+					span.input(countedIn.getCount());
+				}
+				try (document) {
+					write(document, writer, markdownDir, recorder, countedOut);
+				}
+			}
+		} catch (Throwable t) {
+			failure = t;
+			throw t;
+		} finally {
+			recorder.report(listener, countedIn.getCount(), countedOut.getCount(), failure);
+		}
+	}
+
+	/** Image links are relative to the output file; the streaming engine reads parts from the zip on demand. */
+	@Override
+	public void convert(Path input, Path output) throws IOException {
+		Objects.requireNonNull(input, "input");
+		Objects.requireNonNull(output, "output");
+		StageRecorder recorder = new StageRecorder(name(), String.valueOf(input.getFileName()));
+		long inputBytes = -1;
+		StageRecorder.CountingOutputStream countedOut = null;
+		Throwable failure = null;
+		try {
+			inputBytes = Files.size(input);
+			Path outputDir = output.toAbsolutePath().getParent();
+			Files.createDirectories(outputDir);
+
+			if (engine == MarkdownEngine.STREAMING) {
+				OPCPackage pkg;
+				try (StageRecorder.Span span = recorder.start("open")) {
+					pkg = open(input);
+					span.input(inputBytes);
+				}
+				try (StageRecorder.CountingOutputStream os = new StageRecorder.CountingOutputStream(new FileOutputStream(output.toFile()));
+					 Writer writer = newWriter(os)) {
+					countedOut = os;
+					writeStreaming(pkg, writer, outputDir, recorder, os);
+				} finally {
+					pkg.revert();
+				}
+			} else {
+				XWPFDocument document;
+				try (StageRecorder.Span span = recorder.start("load");
+					 InputStream in = Files.newInputStream(input)) {
+					document = new XWPFDocument(in);
+					span.input(inputBytes);
+				}
+				try (document;
+					 StageRecorder.CountingOutputStream os = new StageRecorder.CountingOutputStream(new FileOutputStream(output.toFile()));
+					 Writer writer = newWriter(os)) {
+					countedOut = os;
+					write(document, writer, outputDir, recorder, os);
+				}
+			}
+		} catch (Throwable t) {
+			failure = t;
+			throw t;
+		} finally {
+			recorder.report(listener, inputBytes, countedOut != null ? countedOut.getCount() : -1, failure);
+		}
+	}
+
+	private String name() {
+		return "docx-to-md/" + engine;
+	}
+
+	/** Engine and passes; with an assets dir, also where the image links point from. */
+	@Override
+	public String cacheKey(Path output) {
+		if (engine == MarkdownEngine.XHTML && pipelineKey == null) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder("docx-to-md|").append(engine);
+		if (engine == MarkdownEngine.XHTML) {
+			key.append('|').append(pipelineKey);
+		}
+		if (sharedStyles) {
+			key.append("|shared-styles");
+		}
+		if (imageOptimizer != null) {
+			key.append("|images=").append(imageOptimizer.getMaxWidth()).append('@').append(imageOptimizer.getQuality());
+		}
+		if (imageAssetsDir != null) {
+			Path markdownDir = output != null ? output.toAbsolutePath().getParent() : imageAssetsDir.toAbsolutePath().getParent();
+			key.append("|assets=").append(imageAssetsDir.toAbsolutePath()).append("|from=").append(markdownDir);
+		}
+		return key.toString();
+	}
+
+	/** Images go to the assets dir, when there is one, beside the Markdown. */
+	@Override
+	public boolean writesAssets() {
+		return imageAssetsDir != null;
+	}
+
+	/** Runs the image stage first when {@link DocxToMarkdownOptions#optimizeImages} is on. */
+	private ImageOutput imageOutput(OPCPackage pkg, Path markdownDir, StageRecorder recorder) throws IOException {
+		PictureSource pictures = PictureSource.PARTS;
+		if (imageOptimizer != null) {
+			try (StageRecorder.Span span = recorder.start("images")) {
+				ImageOptimizer.Result optimized = imageOptimizer.optimize(pkg);
+				span.input(optimized.getOriginalBytes());
+				span.output(optimized.getOptimizedBytes());
+				pictures = optimized;
+			}
+		}
+		return imageAssetsDir != null && markdownDir != null
+			? new ContentAddressedImageStore(imageAssetsDir, markdownDir, pictures)
+			: new ImageEmbedder(pictures);
+	}
+
+	private static Writer newWriter(OutputStream out) {
+		return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+	}
+
+	private static OPCPackage open(Path input) throws IOException {
+		try {
+			return OPCPackage.open(input.toFile(), PackageAccess.READ);
+		} catch (InvalidFormatException e) {
+			throw new IOException("Not a valid DOCX package: " + input, e);
+		}
+	}
+
+	private static OPCPackage open(InputStream in) throws IOException {
+		try {
+			return OPCPackage.open(in);
+		} catch (InvalidFormatException e) {
+			throw new IOException("Not a valid DOCX package", e);
+		}
+	}
+
+	private void writeStreaming(OPCPackage pkg, Writer writer, Path markdownDir, StageRecorder recorder,
+							    StageRecorder.CountingOutputStream out) throws IOException {
+		ImageOutput images = imageOutput(pkg, markdownDir, recorder);
+		try (StageRecorder.Span span = recorder.start("write")) {
+			new StreamingDocxReader(pkg, new MarkdownBlockWriter(writer, images, sharedStyles)).write();
+			span.output(out.getCount());
+		}
+	}
+
+	private void write(XWPFDocument document, Writer writer, Path markdownDir, StageRecorder recorder,
+					   StageRecorder.CountingOutputStream out) throws IOException {
+		ImageOutput images = imageOutput(document.getPackage(), markdownDir, recorder);
+		if (engine == MarkdownEngine.DIRECT) {
+			try (StageRecorder.Span span = recorder.start("write")) {
+				new XwpfMarkdownWriter(document, new MarkdownBlockWriter(writer, images, sharedStyles)).write();
+				span.output(out.getCount());
+			}
+		} else {
+			writeXhtml(document, writer, images, recorder, out);
+		}
+	}
+
+	private void writeXhtml(XWPFDocument document, Writer writer, ImageOutput images, StageRecorder recorder,
+							StageRecorder.CountingOutputStream out) throws IOException {
+		// SAX events go straight into the DOM every pass works on; the HTML is never serialised
+		Document html;
+		try (StageRecorder.Span span = recorder.start("xhtml")) {
+			JsoupDomBuilder dom = new JsoupDomBuilder();
+			// The ContentHandler overload is only on the class, not on IXWPFConverter
+			((XHTMLConverter) XHTMLConverter.getInstance()).convert(document, dom, xhtmlOptions);
+			html = dom.getDocument();
+		}
+		try (StageRecorder.Span span = recorder.start("passes")) {
+			pipeline.run(html, new HtmlPassContext(document, images, sharedStyles));
+		}
+
+		// Detach tables and images behind tokens so html2md leaves them alone
+		PlaceholderStore store;
+		try (StageRecorder.Span span = recorder.start("tokenize")) {
+			store = replaceTablesAndImagesWithTokens(html, sharedStyles);
+		}
+
+		// html2md writes through the restoring writer, which swaps the tokens back for the
+		// detached elements (keeps centering and width styles) on the way out
+		try (StageRecorder.Span span = recorder.start("html2md")) {
+			PlaceholderWriter restoring = new PlaceholderWriter(writer, sharedStyles ? HtmlStyles.STYLESHEET + "\n\n" : "",
+				store.tables, store.images);
+			htmlToMarkdown.convert(html, restoring, 1);
+			restoring.finish();
+			writer.flush();
+			span.output(out.getCount());
+		}
+	}
+
+	private static PlaceholderStore replaceTablesAndImagesWithTokens(Document doc, boolean sharedStyles) {
+		List<Element> tables = new ArrayList<>();
+		List<Element> images = new ArrayList<>();
+
+		// Tables -> token
+		for (Element table : new ArrayList<>(doc.getElementsByTag("table"))) {
+			if (table.root() != doc) {
+				// Nested in a table detached above; it travels with its parent
+				continue;
+			}
+			String token = PlaceholderWriter.TABLE_TOKEN + tables.size();
+			Element p = doc.createElement("p");
+			p.appendChild(new TextNode(token));
+			table.replaceWith(p);
+			tables.add(table);
+		}
+
+		// Images -> token (wrap in centered paragraph)
+		for (Element img : new ArrayList<>(doc.getElementsByTag("img"))) {
+			String token = PlaceholderWriter.IMAGE_TOKEN + images.size();
+			Element wrapper = doc.createElement("p");
+			if (sharedStyles) {
+				wrapper.addClass(HtmlStyles.IMAGE_WRAPPER_CLASS);
+			} else {
+				wrapper.attr("style", HtmlStyles.IMAGE_WRAPPER);
+			}
+			img.replaceWith(new TextNode(token));
+			wrapper.appendChild(img);
+			images.add(wrapper);
+		}
+
+		PlaceholderStore store = new PlaceholderStore();
+		store.tables = tables;
+		store.images = images;
+		return store;
+	}
+
+	private static class PlaceholderStore {
+		/** Detached elements for {@code MDPH_TABLE_n} / {@code MDPH_IMG_n}, indexed by n. */
+		List<Element> tables;
+		List<Element> images;
+	}
+}
@@ -0,0 +1,110 @@
+package com.example;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Settings for {@link DocxToHtmlApp#convertDocxToMarkdown(Path, Path, DocxToMarkdownOptions)}.
+ */
+public class DocxToMarkdownOptions {
+
+	private MarkdownEngine engine = MarkdownEngine.XHTML;
+	private HtmlPipeline pipeline;
+	private Path imageAssetsDir;
+	private boolean sharedStyles;
+	private boolean optimizeImages;
+	private float imageQuality = ImageOptimizer.DEFAULT_QUALITY;
+	private ConversionListener listener;
+
+	public static DocxToMarkdownOptions create() {
+		return new DocxToMarkdownOptions();
+	}
+
+	public DocxToMarkdownOptions engine(MarkdownEngine engine) {
+		this.engine = Objects.requireNonNull(engine, "engine");
+		return this;
+	}
+
+	/** Passes for the {@link MarkdownEngine#XHTML} engine; defaults to {@link DocxToHtmlApp#defaultPipeline()}. */
+	public DocxToMarkdownOptions pipeline(HtmlPipeline pipeline) {
+		this.pipeline = pipeline;
+		return this;
+	}
+
+	/**
+	 * Write pictures as {@code <sha256>.<ext>} files into {@code dir} and link them
+	 * by relative path instead of inlining data URIs. {@code null} restores inlining.
+	 */
+	public DocxToMarkdownOptions imageAssetsDir(Path dir) {
+		this.imageAssetsDir = dir;
+		return this;
+	}
+
+	/**
+	 * Emit one {@code <style>} block ahead of the first block and class names on
+	 * tables and images, instead of repeating inline styles on every table, cell
+	 * and image. Column widths stay inline. Renderers that drop {@code <style>}
+	 * elements show such tables without borders.
+	 */
+	public DocxToMarkdownOptions sharedStyles(boolean sharedStyles) {
+		this.sharedStyles = sharedStyles;
+		return this;
+	}
+
+	/**
+	 * Before embedding or storing pictures, resample those wider than the A4 page
+	 * width and convert BMP, TIFF and similar formats to PNG or JPEG. Pictures
+	 * ImageIO cannot read, or that would not get smaller, are kept as they are.
+	 */
+	public DocxToMarkdownOptions optimizeImages(boolean optimizeImages) {
+		this.optimizeImages = optimizeImages;
+		return this;
+	}
+
+	/** JPEG quality for {@link #optimizeImages}, above 0 and at most 1; defaults to 0.85. */
+	public DocxToMarkdownOptions imageQuality(float quality) {
+		if (!(quality > 0 && quality <= 1)) {
+			throw new IllegalArgumentException("quality must be in (0, 1]: " + quality);
+		}
+		this.imageQuality = quality;
+		return this;
+	}
+
+	/** Receives per-stage timings after every conversion; {@code null} for none. */
+	public DocxToMarkdownOptions listener(ConversionListener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	public MarkdownEngine getEngine() {
+		return engine;
+	}
+
+	public HtmlPipeline getPipeline() {
+		return pipeline != null ? pipeline : DocxToHtmlApp.defaultPipeline();
+	}
+
+	boolean hasDefaultPipeline() {
+		return pipeline == null;
+	}
+
+	public Path getImageAssetsDir() {
+		return imageAssetsDir;
+	}
+
+	public boolean isSharedStyles() {
+		return sharedStyles;
+	}
+
+	public boolean isOptimizeImages() {
+		return optimizeImages;
+	}
+
+	public float getImageQuality() {
+		return imageQuality;
+	}
+
+	public ConversionListener getListener() {
+		return listener;
+	}
+}
@@ -0,0 +1,26 @@
+package com.example;
+
+import org.jsoup.nodes.Document;
+
+import java.io.IOException;
+
+/**
+ * A single post-processing step over the HTML produced from a DOCX file.
+ * Passes mutate the shared jsoup {@link Document} in place; they must not
+ * re-parse or serialize it.
+ */
+@FunctionalInterface
+public interface HtmlPass {
+
+	void apply(Document html, HtmlPassContext context) throws IOException;
+
+	/**
+	 * Names what this pass does, including any settings it holds, for
+	 * {@link DocumentConverter#cacheKey}. The default, {@code null}, says the pass
+	 * cannot be told apart from others of its class, and a converter with such a
+	 * pass is not cached; lambdas always have it.
+	 */
+	default String cacheKey() {
+		return null;
+	}
+}
@@ -0,0 +1,36 @@
+package com.example;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.util.Objects;
+
+/**
+ * What an {@link HtmlPass} can see besides the HTML itself.
+ */
+public class HtmlPassContext {
+
+	private final XWPFDocument source;
+	private final ImageOutput images;
+	private final boolean sharedStyles;
+
+	HtmlPassContext(XWPFDocument source, ImageOutput images, boolean sharedStyles) {
+		this.source = Objects.requireNonNull(source, "source");
+		this.images = Objects.requireNonNull(images, "images");
+		this.sharedStyles = sharedStyles;
+	}
+
+	/** The DOCX the HTML was produced from. */
+	public XWPFDocument getSource() {
+		return source;
+	}
+
+	/** Where pictures go for this conversion; use it to resolve {@code <img src>}. */
+	public ImageOutput getImages() {
+		return images;
+	}
+
+	/** Style tables and images by class; the converter writes the stylesheet. */
+	public boolean isSharedStyles() {
+		return sharedStyles;
+	}
+}
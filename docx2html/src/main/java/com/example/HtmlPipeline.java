@@ -0,0 +1,33 @@
+package com.example;
+
+import org.jsoup.nodes.Document;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Ordered chain of {@link HtmlPass}es run against one parsed document.
+ * Start from {@link DocxToHtmlApp#defaultPipeline()} and {@link #add} custom passes to extend it.
+ */
+public class HtmlPipeline {
+
+	private final List<HtmlPass> passes = new ArrayList<>();
+
+	public HtmlPipeline add(HtmlPass pass) {
+		passes.add(Objects.requireNonNull(pass, "pass"));
+		return this;
+	}
+
+	public List<HtmlPass> getPasses() {
+		return Collections.unmodifiableList(passes);
+	}
+
+	public void run(Document html, HtmlPassContext context) throws IOException {
+		for (HtmlPass pass : passes) {
+			pass.apply(html, context);
+		}
+	}
+}
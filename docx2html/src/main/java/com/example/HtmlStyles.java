@@ -0,0 +1,46 @@
+package com.example;
+
+/**
+ * Inline styles shared by every DOCX-to-Markdown engine so that tables and
+ * images look the same whichever path produced them.
+ */
+final class HtmlStyles {
+
+	static final int A4_WIDTH_PX = 794; // ~8.27in * 96dpi
+
+	static final String TABLE = "border-collapse:collapse;table-layout:fixed;" +
+		"margin-left:auto;margin-right:auto;" +
+		"max-width:" + A4_WIDTH_PX + "px;width:100%;box-sizing:border-box;";
+
+	static final String CELL = "border:1px solid #ccc;padding:4px;word-break:break-word;white-space:normal;overflow-wrap:anywhere;";
+
+	static final String IMAGE = "display:block;margin:0 auto;max-width:" + A4_WIDTH_PX + "px;width:100%;height:auto;";
+
+	static final String IMAGE_WRAPPER = "text-align:center;margin:8px 0;";
+
+	static final String TABLE_CLASS = "docx-table";
+
+	static final String IMAGE_CLASS = "docx-image";
+
+	static final String IMAGE_WRAPPER_CLASS = "docx-figure";
+
+	/**
+	 * The styles above as one block, for {@link DocxToMarkdownOptions#sharedStyles}.
+	 * Cells need no class: every cell of a converted table matches the descendant
+	 * selector. Rules are {@code !important} because the inline styles they replace
+	 * were appended after whatever XHTMLConverter wrote, and so won over it.
+	 */
+	static final String STYLESHEET = "<style>\n" +
+		"table." + TABLE_CLASS + "{" + important(TABLE) + "}\n" +
+		"table." + TABLE_CLASS + " td,table." + TABLE_CLASS + " th{" + important(CELL) + "}\n" +
+		"img." + IMAGE_CLASS + "{" + important(IMAGE) + "}\n" +
+		"p." + IMAGE_WRAPPER_CLASS + "{" + important(IMAGE_WRAPPER) + "}\n" +
+		"</style>";
+
+	private static String important(String declarations) {
+		return declarations.replace(";", " !important;");
+	}
+
+	private HtmlStyles() {
+	}
+}
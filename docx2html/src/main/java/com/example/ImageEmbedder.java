@@ -0,0 +1,157 @@
+package com.example;
+
+import org.apache.poi.openxml4j.opc.PackagePart;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Encodes picture parts as {@code data:} URIs. Parts up to 512 KB are encoded at
+ * most once per document, and parts with identical bytes share one encoded
+ * string: a part is hashed first and only encoded when no identical part was,
+ * so a logo referenced hundreds of times costs one Base64 pass. Larger parts are
+ * streamed to the writer on every reference instead, so their encoded text is
+ * never held. Encoding streams from the part, so the raw bytes are never held
+ * alongside the encoded text.
+ */
+class ImageEmbedder implements ImageOutput {
+
+	/** Larger parts are streamed straight to a Writer instead of being kept for reuse. */
+	private static final long MAX_CACHED_PART_BYTES = 512 * 1024;
+
+	private final PictureSource pictures;
+	private final Map<String, String> uriByPartName = new HashMap<>();
+	private final Map<String, String> uriByDigest = new HashMap<>();
+
+	ImageEmbedder() {
+		this(PictureSource.PARTS);
+	}
+
+	ImageEmbedder(PictureSource pictures) {
+		this.pictures = Objects.requireNonNull(pictures, "pictures");
+	}
+
+	@Override
+	public String src(PackagePart part) throws IOException {
+		String partName = part.getPartName().getName();
+		String uri = uriByPartName.get(partName);
+		if (uri != null) {
+			return uri;
+		}
+		String key = digest(pictures, part);
+		uri = uriByDigest.get(key);
+		if (uri == null) {
+			String prefix = prefix(part);
+			long size = pictures.size(part);
+			StringBuilder sb = new StringBuilder(prefix.length() + (size > 0 ? (int) Math.min((size + 2) / 3 * 4, Integer.MAX_VALUE - 64) : 1024));
+			sb.append(prefix);
+			encode(part, sb);
+			uri = sb.toString();
+			uriByDigest.put(key, uri);
+		}
+		uriByPartName.put(partName, uri);
+		return uri;
+	}
+
+	/** Caches the data URI only when the part is small; larger ones are streamed. */
+	@Override
+	public void writeSrc(PackagePart part, Writer out) throws IOException {
+		String uri = uriByPartName.get(part.getPartName().getName());
+		long size = pictures.size(part);
+		if (uri == null && size >= 0 && size <= MAX_CACHED_PART_BYTES) {
+			uri = src(part);
+		}
+		if (uri != null) {
+			out.write(uri);
+		} else {
+			out.write(prefix(part));
+			encode(part, out);
+		}
+	}
+
+	private String prefix(PackagePart part) {
+		return "data:image/" + pictures.extension(part) + ";base64,";
+	}
+
+	/** Hex SHA-256 of the picture's bytes. */
+	static String digest(PictureSource pictures, PackagePart part) throws IOException {
+		MessageDigest digest = sha256();
+		try (InputStream in = new DigestInputStream(pictures.open(part), digest)) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		return toHex(digest.digest());
+	}
+
+	private void encode(PackagePart part, Appendable target) throws IOException {
+		try (InputStream in = pictures.open(part)) {
+			OutputStream encoder = Base64.getEncoder().wrap(new CharSink(target));
+			in.transferTo(encoder);
+			encoder.close();
+		}
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required by the Java platform", e);
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	/** Feeds Base64 output (always ASCII) into a Writer or StringBuilder without an intermediate String. */
+	private static final class CharSink extends OutputStream {
+
+		private final Appendable target;
+		private final char[] buf = new char[4096];
+
+		CharSink(Appendable target) {
+			this.target = target;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			target.append((char) (b & 0xFF));
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int n = Math.min(len, buf.length);
+				for (int i = 0; i < n; i++) {
+					buf[i] = (char) (b[off + i] & 0xFF);
+				}
+				if (target instanceof Writer) {
+					((Writer) target).write(buf, 0, n);
+				} else if (target instanceof StringBuilder) {
+					((StringBuilder) target).append(buf, 0, n);
+				} else {
+					target.append(new String(buf, 0, n));
+				}
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void close() {
+			// The target is owned by the caller
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package com.example;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Shrinks the pictures of a package before they are embedded or stored.
+ * Pictures wider than the page are resampled to fit it, and BMP, TIFF and other
+ * formats browsers handle poorly become PNG or JPEG. Each picture is decoded and
+ * encoded on its own common-pool task, with no more pictures read than there are
+ * workers, so the heap holds a few originals and bitmaps at a time rather than
+ * every picture at once. A conversion past its {@link ConversionScheduler}
+ * deadline stops before the next picture. A picture keeps its original bytes when
+ * ImageIO cannot read it (EMF, WMF, CMYK JPEG), when the result is not smaller,
+ * or when it is rotated by EXIF or carries a colour profile other than sRGB,
+ * neither of which survives re-encoding (see {@link ImageTags}).
+ */
+final class ImageOptimizer {
+
+	static final float DEFAULT_QUALITY = 0.85f;
+
+	/** Shown by browsers as they are, so only worth touching when too wide. */
+	private static final Set<String> WEB_FORMATS = Set.of("png", "jpg", "jpeg");
+
+	/** Animations and vector formats would lose more than they save. */
+	private static final Set<String> KEEP_FORMATS = Set.of("gif", "svg", "webp");
+
+	private final int maxWidth;
+	private final float quality;
+
+	/** {@code quality} is the JPEG compression quality, from 0 exclusive to 1. */
+	ImageOptimizer(int maxWidth, float quality) {
+		if (maxWidth <= 0) {
+			throw new IllegalArgumentException("maxWidth must be positive: " + maxWidth);
+		}
+		if (!(quality > 0 && quality <= 1)) {
+			throw new IllegalArgumentException("quality must be in (0, 1]: " + quality);
+		}
+		this.maxWidth = maxWidth;
+		this.quality = quality;
+	}
+
+	int getMaxWidth() {
+		return maxWidth;
+	}
+
+	float getQuality() {
+		return quality;
+	}
+
+	Result optimize(OPCPackage pkg) throws IOException {
+		List<PackagePart> pictures = new ArrayList<>();
+		try {
+			for (PackagePart part : pkg.getParts()) {
+				if (part.getContentType().startsWith("image/")) {
+					pictures.add(part);
+				}
+			}
+		} catch (InvalidFormatException e) {
+			throw new IOException("Not a valid DOCX package", e);
+		}
+
+		// Parts are read on this thread, each once a worker is about to be free for it;
+		// only decoding and encoding run in parallel
+		int window = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+		List<ForkJoinTask<Picture>> tasks = new ArrayList<>(pictures.size());
+		long[] sizes = new long[pictures.size()];
+		Map<String, Picture> byPartName = new HashMap<>();
+		long originalBytes = 0;
+		long optimizedBytes = 0;
+		try {
+			for (int i = 0; i < pictures.size(); i++) {
+				if (i >= window) {
+					optimizedBytes += collect(tasks, i - window, pictures, sizes, byPartName);
+				}
+				ConversionScheduler.checkDeadline("images");
+				PackagePart part = pictures.get(i);
+				byte[] bytes;
+				try (InputStream in = part.getInputStream()) {
+					bytes = in.readAllBytes();
+				}
+				sizes[i] = bytes.length;
+				originalBytes += bytes.length;
+				String extension = PictureSource.PARTS.extension(part);
+				tasks.add(ForkJoinPool.commonPool().submit(() -> optimize(bytes, extension)));
+			}
+			for (int i = Math.max(0, tasks.size() - window); i < tasks.size(); i++) {
+				optimizedBytes += collect(tasks, i, pictures, sizes, byPartName);
+			}
+		} finally {
+			for (ForkJoinTask<Picture> task : tasks) {
+				if (task != null) {
+					task.cancel(false);
+				}
+			}
+		}
+		return new Result(byPartName, originalBytes, optimizedBytes);
+	}
+
+	/**
+	 * Waits for picture {@code i} and records it; returns its size in the output.
+	 * The task is dropped, since it holds on to the original bytes.
+	 */
+	private static long collect(List<ForkJoinTask<Picture>> tasks, int i, List<PackagePart> pictures, long[] sizes,
+								Map<String, Picture> byPartName) {
+		Picture picture = tasks.get(i).join();
+		tasks.set(i, null);
+		if (picture == null) {
+			return sizes[i];
+		}
+		byPartName.put(pictures.get(i).getPartName().getName(), picture);
+		return picture.bytes.length;
+	}
+
+	/** The replacement for {@code bytes}, or {@code null} to keep them. */
+	private Picture optimize(byte[] bytes, String extension) {
+		if (KEEP_FORMATS.contains(extension) || ImageTags.changedByReencoding(bytes)) {
+			return null;
+		}
+		boolean web = WEB_FORMATS.contains(extension);
+		try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				return null;
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				int width = reader.getWidth(0);
+				if (web && width <= maxWidth) {
+					return null;
+				}
+				// Camera photos decode at a fraction of their size; twice the target is left for filtering
+				ImageReadParam param = reader.getDefaultReadParam();
+				int step = width / (maxWidth * 2);
+				if (step > 1) {
+					param.setSourceSubsampling(step, step, 0, 0);
+				}
+				BufferedImage image = reader.read(0, param);
+
+				boolean alpha = image.getColorModel().hasAlpha();
+				image = scale(image, alpha);
+				boolean photo = extension.equals("jpg") || extension.equals("jpeg");
+				Picture result = photo && !alpha ? jpeg(image) : png(image);
+				if (!photo && !alpha) {
+					// Scans and photos saved as BMP or TIFF; screenshots stay far smaller as PNG
+					Picture lossy = jpeg(image);
+					if (lossy.bytes.length * 2L < result.bytes.length) {
+						result = lossy;
+					}
+				}
+				return web && result.bytes.length >= bytes.length ? null : result;
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException | RuntimeException e) {
+			// Not decodable here; the original is still better than no picture
+			return null;
+		}
+	}
+
+	/**
+	 * Halves with bilinear filtering until the last step lands on the target, so
+	 * every source pixel contributes; one bilinear step to a much smaller size would
+	 * skip most of them.
+	 */
+	private BufferedImage scale(BufferedImage image, boolean alpha) {
+		int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		int targetHeight = (int) Math.max(1, Math.round((double) image.getHeight() * maxWidth / image.getWidth()));
+		while (image.getWidth() > maxWidth) {
+			boolean last = image.getWidth() / 2 <= maxWidth;
+			int width = last ? maxWidth : image.getWidth() / 2;
+			int height = last ? targetHeight : Math.max(1, image.getHeight() / 2);
+			image = redraw(image, width, height, type);
+		}
+		return image;
+	}
+
+	private Picture jpeg(BufferedImage image) throws IOException {
+		if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+			image = redraw(image, image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		}
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+			writer.setOutput(out);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(quality);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		return new Picture(bytes.toByteArray(), "jpeg");
+	}
+
+	private static Picture png(BufferedImage image) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if (!ImageIO.write(image, "png", bytes)) {
+			throw new IOException("No PNG writer for image type " + image.getType());
+		}
+		return new Picture(bytes.toByteArray(), "png");
+	}
+
+	private static BufferedImage redraw(BufferedImage image, int width, int height, int type) {
+		BufferedImage target = new BufferedImage(width, height, type);
+		Graphics2D g = target.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return target;
+	}
+
+	private static final class Picture {
+		final byte[] bytes;
+		final String extension;
+
+		Picture(byte[] bytes, String extension) {
+			this.bytes = bytes;
+			this.extension = extension;
+		}
+	}
+
+	/** Optimised bytes where a picture got smaller or had to change format; every other part reads as stored. */
+	static final class Result implements PictureSource {
+
+		private final Map<String, Picture> byPartName;
+		private final long originalBytes;
+		private final long optimizedBytes;
+
+		private Result(Map<String, Picture> byPartName, long originalBytes, long optimizedBytes) {
+			this.byPartName = byPartName;
+			this.originalBytes = originalBytes;
+			this.optimizedBytes = optimizedBytes;
+		}
+
+		@Override
+		public InputStream open(PackagePart part) throws IOException {
+			Picture picture = byPartName.get(part.getPartName().getName());
+			return picture != null ? new ByteArrayInputStream(picture.bytes) : PARTS.open(part);
+		}
+
+		@Override
+		public String extension(PackagePart part) {
+			Picture picture = byPartName.get(part.getPartName().getName());
+			return picture != null ? picture.extension : PARTS.extension(part);
+		}
+
+		@Override
+		public long size(PackagePart part) {
+			Picture picture = byPartName.get(part.getPartName().getName());
+			return picture != null ? picture.bytes.length : PARTS.size(part);
+		}
+
+		/** Picture bytes in the package. */
+		long getOriginalBytes() {
+			return originalBytes;
+		}
+
+		/** Picture bytes after optimisation. */
+		long getOptimizedBytes() {
+			return optimizedBytes;
+		}
+	}
+}
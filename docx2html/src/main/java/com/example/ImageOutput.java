@@ -0,0 +1,21 @@
+package com.example;
+
+import org.apache.poi.openxml4j.opc.PackagePart;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Decides what an {@code <img src>} points at for a picture part: an inline
+ * data URI ({@link ImageEmbedder}) or a file beside the Markdown
+ * ({@link ContentAddressedImageStore}).
+ */
+public interface ImageOutput {
+
+	String src(PackagePart part) throws IOException;
+
+	/** Writes {@link #src} to {@code out}; implementations may stream instead of building the String. */
+	default void writeSrc(PackagePart part, Writer out) throws IOException {
+		out.write(src(part));
+	}
+}
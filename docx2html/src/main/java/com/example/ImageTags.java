@@ -0,0 +1,244 @@
+package com.example;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads just enough of a JPEG, PNG or TIFF file to tell whether decoding and
+ * re-encoding it would change how it looks. ImageIO hands back the stored
+ * pixels and writes neither an EXIF orientation nor a colour profile, so a
+ * picture that is not upright or not sRGB would come out turned or off-colour.
+ */
+final class ImageTags {
+
+	private static final int TIFF_ORIENTATION = 0x0112;
+	private static final int TIFF_ICC_PROFILE = 0x8773;
+	private static final int TIFF_SHORT = 3;
+	private static final byte[] JPEG_EXIF = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] JPEG_ICC = "ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII);
+	/** Identifier, sequence number and segment count before each piece of a JPEG profile. */
+	private static final int JPEG_ICC_HEADER = 14;
+	private static final int ICC_TAG_TABLE = 128;
+	/** sRGB's primaries as ICC profiles store them, adapted to D50. */
+	private static final double[][] SRGB_COLORANTS = {
+		{0.4361, 0.2225, 0.0139}, {0.3851, 0.7169, 0.0971}, {0.1431, 0.0606, 0.7141}};
+	private static final String[] COLORANT_TAGS = {"rXYZ", "gXYZ", "bXYZ"};
+	/** Far above any real profile; a larger one is treated as damage rather than allocated. */
+	private static final int MAX_PROFILE_BYTES = 4 * 1024 * 1024;
+
+	private ImageTags() {
+	}
+
+	/**
+	 * Whether {@code image} has an orientation other than upright or a colour
+	 * profile other than sRGB. Metadata too damaged to read counts as having them,
+	 * since the original then stays, which is never worse than before.
+	 */
+	static boolean changedByReencoding(byte[] image) {
+		try {
+			if (image.length > 3 && u8(image, 0) == 0xff && u8(image, 1) == 0xd8) {
+				return jpeg(image);
+			}
+			if (image.length > 8 && u8(image, 0) == 0x89 && ascii(image, 1, 3).equals("PNG")) {
+				return png(image);
+			}
+			if (image.length > 8 && (ascii(image, 0, 2).equals("II") || ascii(image, 0, 2).equals("MM"))) {
+				return tiff(image, 0);
+			}
+			return false;
+		} catch (RuntimeException | DataFormatException e) {
+			// Offsets and lengths past the data, or a corrupt compressed profile
+			return true;
+		}
+	}
+
+	private static boolean jpeg(byte[] b) throws DataFormatException {
+		ByteArrayOutputStream profile = null;
+		int pos = 2;
+		while (pos + 4 <= b.length && u8(b, pos) == 0xff) {
+			int marker = u8(b, pos + 1);
+			if (marker == 0xff || marker == 0x01 || marker >= 0xd0 && marker <= 0xd8) {
+				// Fill byte or a marker without a length
+				pos += marker == 0xff ? 1 : 2;
+				continue;
+			}
+			if (marker == 0xda || marker == 0xd9) {
+				// Compressed data follows; metadata comes before it
+				break;
+			}
+			int data = pos + 4;
+			int end = pos + 2 + u16(b, pos + 2, false);
+			if (marker == 0xe1 && startsWith(b, data, JPEG_EXIF) && tiff(b, data + JPEG_EXIF.length)) {
+				return true;
+			}
+			if (marker == 0xe2 && startsWith(b, data, JPEG_ICC)) {
+				// Large profiles are split over several segments, in order
+				if (profile == null) {
+					profile = new ByteArrayOutputStream();
+				}
+				profile.write(b, data + JPEG_ICC_HEADER, end - data - JPEG_ICC_HEADER);
+			}
+			pos = end;
+		}
+		return profile != null && !isSrgb(profile.toByteArray());
+	}
+
+	private static boolean png(byte[] b) throws DataFormatException {
+		int pos = 8;
+		while (pos + 12 <= b.length) {
+			int length = s32(b, pos, false);
+			if (length < 0) {
+				throw new DataFormatException("Chunk length out of range");
+			}
+			String type = ascii(b, pos + 4, 4);
+			int data = pos + 8;
+			if (type.equals("iCCP")) {
+				// Profile name, a zero byte, the compression method, then the zlib stream
+				int name = data;
+				while (b[name] != 0) name++;
+				int zlib = name + 2;
+				if (!isSrgb(inflate(b, zlib, data + length - zlib))) {
+					return true;
+				}
+			} else if (type.equals("eXIf") && tiff(b, data)) {
+				return true;
+			} else if (type.equals("IEND")) {
+				break;
+			}
+			pos = data + length + 4;
+		}
+		return false;
+	}
+
+	/** A TIFF structure at {@code start}: a TIFF file or the EXIF block of a JPEG or PNG. Reads the first directory. */
+	private static boolean tiff(byte[] b, int start) throws DataFormatException {
+		boolean little = b[start] == 'I';
+		int dir = start + s32(b, start + 4, little);
+		int entries = u16(b, dir, little);
+		for (int i = 0; i < entries; i++) {
+			int entry = dir + 2 + i * 12;
+			int tag = u16(b, entry, little);
+			if (tag == TIFF_ORIENTATION && u16(b, entry + 2, little) == TIFF_SHORT) {
+				if (u16(b, entry + 8, little) != 1) {
+					return true;
+				}
+			} else if (tag == TIFF_ICC_PROFILE) {
+				int count = s32(b, entry + 4, little);
+				int offset = start + s32(b, entry + 8, little);
+				if (count < 0 || offset < 0 || count > b.length - offset) {
+					throw new DataFormatException("Profile out of range");
+				}
+				if (!isSrgb(Arrays.copyOfRange(b, offset, offset + count))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether {@code profile} is sRGB: its primaries are sRGB's and its tone curve
+	 * is not linear. Names are no help; the JDK calls its linear profile "linear
+	 * sRGB", and compact sRGB profiles go by names like "c2".
+	 */
+	static boolean isSrgb(byte[] profile) {
+		for (int i = 0; i < COLORANT_TAGS.length; i++) {
+			int at = iccTag(profile, COLORANT_TAGS[i]);
+			if (at < 0 || !ascii(profile, at, 4).equals("XYZ ")) {
+				return false;
+			}
+			for (int c = 0; c < 3; c++) {
+				if (Math.abs(s32(profile, at + 8 + c * 4, false) / 65536.0 - SRGB_COLORANTS[i][c]) > 0.01) {
+					return false;
+				}
+			}
+		}
+		int curve = iccTag(profile, "rTRC");
+		return curve >= 0 && gamma(profile, curve) > 1.5;
+	}
+
+	/** Offset of the tag with signature {@code signature}, or -1. */
+	private static int iccTag(byte[] profile, String signature) {
+		int tags = s32(profile, ICC_TAG_TABLE, false);
+		for (int i = 0; i < tags; i++) {
+			int entry = ICC_TAG_TABLE + 4 + i * 12;
+			if (ascii(profile, entry, 4).equals(signature)) {
+				return s32(profile, entry + 4, false);
+			}
+		}
+		return -1;
+	}
+
+	/** Rough exponent of a tone curve: 1 when linear, about 2.2 for sRGB's. */
+	private static double gamma(byte[] profile, int at) {
+		String type = ascii(profile, at, 4);
+		if (type.equals("curv")) {
+			int count = s32(profile, at + 8, false);
+			if (count == 0) {
+				return 1;
+			}
+			if (count == 1) {
+				return u16(profile, at + 12, false) / 256.0;
+			}
+			// The exponent that takes the middle input to the table's middle output
+			int middle = count / 2;
+			double y = u16(profile, at + 12 + middle * 2, false) / 65535.0;
+			return Math.log(y) / Math.log(middle / (double) (count - 1));
+		}
+		if (type.equals("para")) {
+			return s32(profile, at + 12, false) / 65536.0;
+		}
+		return 0;
+	}
+
+	private static byte[] inflate(byte[] b, int offset, int length) throws DataFormatException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(b, offset, length);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			while (!inflater.finished()) {
+				int n = inflater.inflate(buf);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new DataFormatException("Truncated profile");
+				}
+				out.write(buf, 0, n);
+				if (out.size() > MAX_PROFILE_BYTES) {
+					throw new DataFormatException("Profile too large");
+				}
+			}
+			return out.toByteArray();
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static boolean startsWith(byte[] b, int offset, byte[] prefix) {
+		if (offset + prefix.length > b.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (b[offset + i] != prefix[i]) return false;
+		}
+		return true;
+	}
+
+	private static String ascii(byte[] b, int offset, int length) {
+		return new String(b, offset, length, StandardCharsets.ISO_8859_1);
+	}
+
+	private static int u8(byte[] b, int offset) {
+		return b[offset] & 0xff;
+	}
+
+	private static int u16(byte[] b, int offset, boolean little) {
+		return little ? u8(b, offset) | u8(b, offset + 1) << 8 : u8(b, offset) << 8 | u8(b, offset + 1);
+	}
+
+	private static int s32(byte[] b, int offset, boolean little) {
+		return little ? u16(b, offset, true) | u16(b, offset + 2, true) << 16 : u16(b, offset, false) << 16 | u16(b, offset + 2, false);
+	}
+}
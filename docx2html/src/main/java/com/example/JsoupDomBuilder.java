@@ -0,0 +1,103 @@
+package com.example;
+
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Builds a jsoup {@link Document} straight from XHTMLConverter's SAX events, so
+ * the HTML is never serialised to bytes and parsed back. The result matches what
+ * {@code Jsoup.parse} makes of the serialised form: XHTMLConverter hands over
+ * text and attribute values already entity-escaped, so they are unescaped here;
+ * style and script content become data nodes; and rows directly inside a table
+ * get the implied {@code <tbody>}. The one difference is a fix: quotes inside
+ * attribute values, which XHTMLConverter serialises unescaped, survive here.
+ */
+final class JsoupDomBuilder extends DefaultHandler {
+
+	private final Document document = new Document("");
+	private final Deque<Element> open = new ArrayDeque<>();
+	private final StringBuilder text = new StringBuilder();
+
+	JsoupDomBuilder() {
+		open.push(document);
+	}
+
+	Document getDocument() {
+		return document;
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) {
+		flushText();
+		String name = localName != null && !localName.isEmpty() ? localName : qName;
+		Element parent = open.peek();
+		if (name.equalsIgnoreCase("tr") && parent.normalName().equals("table")) {
+			Element body = new Element("tbody");
+			parent.appendChild(body);
+			open.push(body);
+			parent = body;
+		}
+		Element element = new Element(Tag.valueOf(name), "");
+		for (int i = 0; i < attributes.getLength(); i++) {
+			String attribute = attributes.getLocalName(i);
+			element.attr(attribute != null && !attribute.isEmpty() ? attribute : attributes.getQName(i),
+				unescape(attributes.getValue(i), true));
+		}
+		parent.appendChild(element);
+		open.push(element);
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) {
+		flushText();
+		String name = Tag.valueOf(localName != null && !localName.isEmpty() ? localName : qName).normalName();
+		// Also closes an implied tbody on the way out of its table
+		while (open.size() > 1) {
+			if (open.pop().normalName().equals(name)) {
+				break;
+			}
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) {
+		text.append(ch, start, length);
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) {
+		text.append(ch, start, length);
+	}
+
+	@Override
+	public void endDocument() {
+		flushText();
+	}
+
+	/** SAX may split one run of text into several calls; jsoup keeps it as one node. */
+	private void flushText() {
+		if (text.length() == 0) {
+			return;
+		}
+		Element parent = open.peek();
+		String name = parent.normalName();
+		parent.appendChild(name.equals("style") || name.equals("script")
+			? new DataNode(text.toString())
+			: new TextNode(unescape(text.toString(), false)));
+		text.setLength(0);
+	}
+
+	/** Each unescapeEntities call sets up a tokeniser with its own buffers, so skip it when there is nothing to do. */
+	private static String unescape(String value, boolean inAttribute) {
+		return value.indexOf('&') >= 0 ? Parser.unescapeEntities(value, inAttribute) : value;
+	}
+}
@@ -0,0 +1,276 @@
+package com.example;
+
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.jsoup.nodes.Entities;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Markdown output shared by the engines that do not go through html2md
+ * ({@link XwpfMarkdownWriter}, {@link StreamingDocxReader}). Block spacing,
+ * escaping, and the raw HTML used for tables and images are kept here so every
+ * engine writes the same thing for the same input.
+ */
+class MarkdownBlockWriter {
+
+	private static final Pattern HEADING_STYLE = Pattern.compile("(?i)^heading\\s*([1-6])$");
+	private static final Pattern ORDERED_MARKER = Pattern.compile("^(\\d+)([.)])");
+
+	private final Writer out;
+	private final ImageOutput images;
+	private final boolean sharedStyles;
+	private boolean firstBlock = true;
+	private boolean previousWasListItem;
+	private int tableDepth;
+
+	/** With {@code sharedStyles} the first block is preceded by {@link HtmlStyles#STYLESHEET} and tags carry classes. */
+	MarkdownBlockWriter(Writer out, ImageOutput images, boolean sharedStyles) {
+		this.out = Objects.requireNonNull(out, "out");
+		this.images = Objects.requireNonNull(images, "images");
+		this.sharedStyles = sharedStyles;
+	}
+
+	void heading(int level, String inlineMarkdown) throws IOException {
+		startBlock(false);
+		out.write("#".repeat(level));
+		out.write(' ');
+		out.write(inlineMarkdown);
+	}
+
+	void listItem(int level, boolean bullet, String inlineMarkdown) throws IOException {
+		startBlock(true);
+		// Four spaces nest under both "- " and "1. " markers
+		out.write("    ".repeat(Math.max(level, 0)));
+		out.write(bullet ? "- " : "1. ");
+		out.write(inlineMarkdown);
+	}
+
+	void paragraph(String inlineMarkdown) throws IOException {
+		startBlock(false);
+		out.write(escapeBlockStart(inlineMarkdown));
+	}
+
+	void image(PackagePart part, double widthPt, double heightPt) throws IOException {
+		startBlock(false);
+		out.write(sharedStyles
+			? "<p class=\"" + HtmlStyles.IMAGE_WRAPPER_CLASS + "\">"
+			: "<p style=\"" + HtmlStyles.IMAGE_WRAPPER + "\">");
+		imageTag(part, widthPt, heightPt);
+		out.write("</p>");
+	}
+
+	/** Writes a bare {@code <img>} whose src comes from the {@link ImageOutput}. */
+	void imageTag(PackagePart part, double widthPt, double heightPt) throws IOException {
+		out.write("<img src=\"");
+		images.writeSrc(part, out);
+		if (sharedStyles) {
+			// The class sets width and height, which overrode the point sizes inline as well
+			out.write("\" class=\"" + HtmlStyles.IMAGE_CLASS + "\">");
+		} else {
+			out.write("\" style=\"width:" + widthPt + "pt;height:" + heightPt + "pt;" + HtmlStyles.IMAGE + "\">");
+		}
+	}
+
+	void startTable(List<Integer> colWidthsPx) throws IOException {
+		if (tableDepth == 0) {
+			startBlock(false);
+		} else {
+			out.write('\n');
+		}
+		tableDepth++;
+		out.write(sharedStyles
+			? "<table class=\"" + HtmlStyles.TABLE_CLASS + "\">\n"
+			: "<table style=\"" + HtmlStyles.TABLE + "\">\n");
+		if (!colWidthsPx.isEmpty()) {
+			out.write("<colgroup>");
+			for (Integer w : colWidthsPx) {
+				out.write(w != null && w > 0 ? "<col style=\"width: " + w + "px\">" : "<col>");
+			}
+			out.write("</colgroup>\n");
+		}
+		out.write("<tbody>\n");
+	}
+
+	void startRow() throws IOException {
+		out.write("<tr>");
+	}
+
+	void startCell(int colSpan, int rowSpan) throws IOException {
+		out.write(sharedStyles ? "<td" : "<td style=\"" + HtmlStyles.CELL + "\"");
+		if (colSpan > 1) out.write(" colspan=\"" + colSpan + "\"");
+		if (rowSpan > 1) out.write(" rowspan=\"" + rowSpan + "\"");
+		out.write('>');
+	}
+
+	void startCellParagraph() throws IOException {
+		out.write("<p>");
+	}
+
+	void write(String html) throws IOException {
+		out.write(html);
+	}
+
+	void endCellParagraph() throws IOException {
+		out.write("</p>");
+	}
+
+	void endCell() throws IOException {
+		out.write("</td>");
+	}
+
+	void endRow() throws IOException {
+		out.write("</tr>\n");
+	}
+
+	void endTable() throws IOException {
+		out.write("</tbody>\n</table>");
+		tableDepth--;
+		if (tableDepth > 0) {
+			out.write('\n');
+		}
+	}
+
+	void finish() throws IOException {
+		if (!firstBlock) {
+			out.write("\n");
+		}
+		out.flush();
+	}
+
+	private void startBlock(boolean listItem) throws IOException {
+		if (!firstBlock) {
+			out.write(listItem && previousWasListItem ? "\n" : "\n\n");
+		} else if (sharedStyles) {
+			out.write(HtmlStyles.STYLESHEET);
+			out.write("\n\n");
+		}
+		firstBlock = false;
+		previousWasListItem = listItem;
+	}
+
+	/**
+	 * Heading level for a paragraph style, from its display name ("heading 2",
+	 * "Title") or, failing that, its id ("Heading2"). Zero when not a heading.
+	 */
+	static int headingLevel(String styleName, String styleId) {
+		String name = styleName != null ? styleName.trim() : styleId;
+		if ("title".equalsIgnoreCase(name)) return 1;
+		Matcher m = HEADING_STYLE.matcher(name);
+		if (!m.matches()) m = HEADING_STYLE.matcher(styleId);
+		return m.matches() ? Integer.parseInt(m.group(1)) : 0;
+	}
+
+	static boolean isBulletFormat(String numFmt) {
+		return numFmt == null || "bullet".equalsIgnoreCase(numFmt) || "none".equalsIgnoreCase(numFmt);
+	}
+
+	private static String escapeBlockStart(String text) {
+		char c = text.charAt(0);
+		if (c == '#' || c == '-' || c == '+' || c == '=') {
+			return "\\" + text;
+		}
+		Matcher m = ORDERED_MARKER.matcher(text);
+		return m.lookingAt() ? m.group(1) + "\\" + text.substring(m.group(1).length()) : text;
+	}
+
+	static String escapeMarkdown(String text) {
+		StringBuilder sb = new StringBuilder(text.length() + 8);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '\\':
+				case '`':
+				case '*':
+				case '_':
+				case '[':
+				case ']':
+				case '<':
+				case '>':
+				case '&':
+					sb.append('\\').append(c);
+					break;
+				case '\n':
+					sb.append("<br>");
+					break;
+				case '\r':
+					break;
+				default:
+					sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	static String escapeHtml(String text) {
+		return Entities.escape(text).replace("\n", "<br>");
+	}
+
+	/**
+	 * Collects a paragraph's runs, merging adjacent runs that share formatting so
+	 * emphasis markers are not split mid-word, and renders them as Markdown or HTML.
+	 */
+	static final class InlineText {
+
+		private final boolean html;
+		private final StringBuilder sb = new StringBuilder();
+		private final StringBuilder segment = new StringBuilder();
+		private boolean bold;
+		private boolean italic;
+		private String link;
+
+		InlineText(boolean html) {
+			this.html = html;
+		}
+
+		void add(String text, boolean bold, boolean italic, String link) {
+			if (text.isEmpty()) {
+				return;
+			}
+			if (segment.length() > 0 && (bold != this.bold || italic != this.italic || !Objects.equals(link, this.link))) {
+				flush();
+			}
+			this.bold = bold;
+			this.italic = italic;
+			this.link = link;
+			segment.append(text);
+		}
+
+		String finish() {
+			flush();
+			return sb.toString().trim();
+		}
+
+		private void flush() {
+			if (segment.length() == 0) {
+				return;
+			}
+			String raw = segment.toString();
+			segment.setLength(0);
+			// Keep surrounding whitespace outside emphasis markers
+			int start = 0;
+			int end = raw.length();
+			while (start < end && Character.isWhitespace(raw.charAt(start))) start++;
+			while (end > start && Character.isWhitespace(raw.charAt(end - 1))) end--;
+			sb.append(raw, 0, start);
+			if (start < end) {
+				String core = html ? escapeHtml(raw.substring(start, end)) : escapeMarkdown(raw.substring(start, end));
+				if (html) {
+					if (link != null) core = "<a href=\"" + Entities.escape(link) + "\">" + core + "</a>";
+					if (italic) core = "<em>" + core + "</em>";
+					if (bold) core = "<strong>" + core + "</strong>";
+				} else {
+					if (link != null) core = "[" + core + "](" + link.replace(" ", "%20").replace(")", "%29") + ")";
+					String marker = bold && italic ? "***" : bold ? "**" : italic ? "*" : "";
+					core = marker + core + marker;
+				}
+				sb.append(core);
+			}
+			sb.append(raw, end, raw.length());
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits Markdown into pieces that convert the same on their own as in the
+ * whole document. A piece only ends before an unindented line that follows a
+ * blank line outside fenced code and multi-line HTML blocks, and never inside a
+ * list, so no block, list or code fence is cut in half.
+ */
+final class MarkdownChunks {
+
+	static final class Chunk {
+		final String text;
+		/** Zero-based line of the chunk's first line in the whole document. */
+		final int firstLine;
+
+		Chunk(String text, int firstLine) {
+			this.text = text;
+			this.firstLine = firstLine;
+		}
+	}
+
+	/**
+	 * Pieces of at least {@code targetChars} each (the last may be shorter), or the
+	 * whole text as one piece when it cannot be split safely. Reference-style link
+	 * definitions apply document-wide, so text containing any is never split.
+	 */
+	static List<Chunk> split(String markdown, int targetChars) {
+		List<Chunk> chunks = new ArrayList<>();
+		if (markdown.length() <= targetChars || hasLinkReferenceDefinition(markdown)) {
+			chunks.add(new Chunk(markdown, 0));
+			return chunks;
+		}
+
+		int chunkStart = 0;
+		int chunkFirstLine = 0;
+		int line = 0;
+		boolean previousBlank = false;
+		char fenceChar = 0;
+		int fenceLength = 0;
+		String htmlEnd = null;
+
+		int pos = 0;
+		while (pos < markdown.length()) {
+			int eol = markdown.indexOf('\n', pos);
+			int next = eol < 0 ? markdown.length() : eol + 1;
+			int end = eol < 0 ? markdown.length() : eol;
+			if (end > pos && markdown.charAt(end - 1) == '\r') end--;
+
+			int indent = 0;
+			while (indent < 4 && pos + indent < end && markdown.charAt(pos + indent) == ' ') indent++;
+			int text = pos + indent;
+			boolean blank = isBlank(markdown, pos, end);
+
+			if (fenceChar != 0) {
+				int run = fenceRun(markdown, text, end, fenceChar);
+				if (indent < 4 && run >= fenceLength && isBlank(markdown, text + run, end)) {
+					fenceChar = 0;
+				}
+			} else if (htmlEnd != null) {
+				if (markdown.substring(pos, end).toLowerCase(Locale.ROOT).contains(htmlEnd)) {
+					htmlEnd = null;
+				}
+			} else {
+				if (previousBlank && indent == 0 && !blank && !isListMarker(markdown, pos, end)
+					&& markdown.charAt(pos) != '\t' && pos - chunkStart >= targetChars) {
+					chunks.add(new Chunk(markdown.substring(chunkStart, pos), chunkFirstLine));
+					chunkStart = pos;
+					chunkFirstLine = line;
+				}
+				if (indent < 4 && text < end) {
+					char c = markdown.charAt(text);
+					int run = c == '`' || c == '~' ? fenceRun(markdown, text, end, c) : 0;
+					if (run >= 3) {
+						fenceChar = c;
+						fenceLength = run;
+					} else if (c == '<') {
+						htmlEnd = htmlBlockEnd(markdown.substring(text, end));
+					}
+				}
+			}
+
+			previousBlank = blank;
+			pos = next;
+			line++;
+		}
+		chunks.add(new Chunk(markdown.substring(chunkStart), chunkFirstLine));
+		return chunks;
+	}
+
+	/** Closing marker of an HTML block that may contain blank lines, or {@code null} when it ends on this line. */
+	private static String htmlBlockEnd(String line) {
+		String lower = line.toLowerCase(Locale.ROOT);
+		String end = null;
+		if (lower.startsWith("<!--")) {
+			end = "-->";
+		} else if (lower.startsWith("<pre") || lower.startsWith("<script") || lower.startsWith("<style")
+			|| lower.startsWith("<textarea")) {
+			end = "</" + lower.substring(1).split("[\\s>]", 2)[0] + ">";
+		} else if (lower.startsWith("<?")) {
+			end = "?>";
+		} else if (lower.startsWith("<![cdata[")) {
+			end = "]]>";
+		}
+		return end != null && !lower.contains(end) ? end : null;
+	}
+
+	private static boolean hasLinkReferenceDefinition(String markdown) {
+		int pos = 0;
+		while (pos < markdown.length()) {
+			int eol = markdown.indexOf('\n', pos);
+			int end = eol < 0 ? markdown.length() : eol;
+			int i = pos;
+			while (i < end && i - pos < 4 && markdown.charAt(i) == ' ') i++;
+			if (i - pos < 4 && i < end && markdown.charAt(i) == '[') {
+				for (int j = i + 2; j + 1 < end; j++) {
+					if (markdown.charAt(j) == ']' && markdown.charAt(j + 1) == ':') {
+						return true;
+					}
+				}
+			}
+			pos = end + 1;
+		}
+		return false;
+	}
+
+	private static int fenceRun(String s, int from, int end, char c) {
+		int i = from;
+		while (i < end && s.charAt(i) == c) i++;
+		return i - from;
+	}
+
+	private static boolean isBlank(String s, int from, int end) {
+		for (int i = from; i < end; i++) {
+			char c = s.charAt(i);
+			if (c != ' ' && c != '\t' && c != '\r') return false;
+		}
+		return true;
+	}
+
+	/** Bullet or ordered list marker; lists stay whole so tight and loose items render as before. */
+	private static boolean isListMarker(String s, int from, int end) {
+		char c = s.charAt(from);
+		if (c == '-' || c == '*' || c == '+') {
+			return from + 1 >= end || s.charAt(from + 1) == ' ' || s.charAt(from + 1) == '\t';
+		}
+		int i = from;
+		while (i < end && i - from < 9 && Character.isDigit(s.charAt(i))) i++;
+		return i > from && i < end && (s.charAt(i) == '.' || s.charAt(i) == ')');
+	}
+
+	private MarkdownChunks() {
+	}
+}
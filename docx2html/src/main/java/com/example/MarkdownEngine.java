@@ -0,0 +1,16 @@
+package com.example;
+
+/**
+ * Selects how {@link DocxToHtmlApp} turns a DOCX file into Markdown.
+ */
+public enum MarkdownEngine {
+
+	/** XHTMLConverter, jsoup passes, then flexmark html2md. */
+	XHTML,
+
+	/** Walks the XWPF body and writes Markdown directly, see {@link XwpfMarkdownWriter}. */
+	DIRECT,
+
+	/** Streams document.xml with StAX in bounded memory, see {@link StreamingDocxReader}. */
+	STREAMING
+}
@@ -0,0 +1,255 @@
+package com.example;
+
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Node;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.jsoup.Jsoup;
+import org.apache.xmlbeans.XmlCursor;
+import org.jsoup.nodes.Document;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Markdown (UTF-8) to DOCX. The flexmark parser and renderer are built once and
+ * are safe to share, so one instance can serve every thread. With
+ * {@link DocxEngine#DIRECT}, errors in the document body carry the Markdown
+ * source line.
+ */
+public final class MarkdownToDocxConverter implements DocumentConverter {
+
+	/** Smallest piece worth a task of its own when {@link MarkdownToDocxOptions#parallel} is on. */
+	static final int PARALLEL_CHUNK_CHARS = 256 * 1024;
+
+	private static final String SECTION_PROPERTIES = "sectPr";
+
+	private final DocxEngine engine;
+	private final boolean parallel;
+	private final Parser parser;
+	private final HtmlRenderer renderer;
+	private final ConversionListener listener;
+
+	public MarkdownToDocxConverter() {
+		this(MarkdownToDocxOptions.create());
+	}
+
+	public MarkdownToDocxConverter(MarkdownToDocxOptions options) {
+		Objects.requireNonNull(options, "options");
+		this.engine = options.getEngine();
+		this.parallel = options.isParallel();
+		this.parser = Parser.builder().build();
+		// Only the HTML engine renders; DIRECT skips building the renderer and its extensions
+		this.renderer = engine == DocxEngine.HTML ? HtmlRenderer.builder().build() : null;
+		this.listener = options.getListener();
+	}
+
+	@Override
+	public void convert(InputStream in, OutputStream out) throws IOException {
+		Objects.requireNonNull(in, "in");
+		Objects.requireNonNull(out, "out");
+		convert(in, out, null);
+	}
+
+	@Override
+	public void convert(Path input, Path output) throws IOException {
+		Objects.requireNonNull(input, "input");
+		Objects.requireNonNull(output, "output");
+		Path parent = output.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (InputStream in = Files.newInputStream(input);
+			 OutputStream out = new FileOutputStream(output.toFile())) {
+			convert(in, out, String.valueOf(input.getFileName()));
+		}
+	}
+
+	@Override
+	public String cacheKey(Path output) {
+		return "md-to-docx|" + engine;
+	}
+
+	private void convert(InputStream in, OutputStream out, String source) throws IOException {
+		StageRecorder recorder = new StageRecorder("md-to-docx/" + engine, source);
+		long inputBytes = -1;
+		StageRecorder.CountingOutputStream countedOut = new StageRecorder.CountingOutputStream(out);
+		Throwable failure = null;
+		try {
+			String markdown;
+			try (StageRecorder.Span span = recorder.start("read")) {
+				byte[] bytes = in.readAllBytes();
+				inputBytes = bytes.length;
+				markdown = new String(bytes, StandardCharsets.UTF_8);
+				span.input(inputBytes);
+			}
+
+			List<MarkdownChunks.Chunk> chunks = null;
+			if (parallel) {
+				try (StageRecorder.Span span = recorder.start("split")) {
+					span.input(markdown.length());
+					chunks = MarkdownChunks.split(markdown, PARALLEL_CHUNK_CHARS);
+				}
+			}
+
+			XWPFDocument xdoc;
+			if (chunks != null && chunks.size() > 1) {
+				try (StageRecorder.Span span = recorder.start("build")) {
+					span.input(markdown.length());
+					xdoc = buildInParallel(chunks, source);
+				}
+			} else {
+				xdoc = build(markdown, source, recorder);
+			}
+
+			try (xdoc; StageRecorder.Span span = recorder.start("write")) {
+				xdoc.write(countedOut);
+				span.output(countedOut.getCount());
+			}
+		} catch (Throwable t) {
+			failure = t;
+			throw t;
+		} finally {
+			recorder.report(listener, inputBytes, countedOut.getCount(), failure);
+		}
+	}
+
+	private XWPFDocument build(String markdown, String source, StageRecorder recorder) throws IOException {
+		Node mdDocument;
+		try (StageRecorder.Span span = recorder.start("parse")) {
+			span.input(markdown.length());
+			mdDocument = parser.parse(markdown);
+		}
+
+		if (engine == DocxEngine.DIRECT) {
+			try (StageRecorder.Span span = recorder.start("build")) {
+				return new MarkdownXwpfWriter(mdDocument, source).build();
+			}
+		}
+
+		String html;
+		try (StageRecorder.Span span = recorder.start("render")) {
+			html = renderer.render(mdDocument);
+			span.output(html.length());
+		}
+
+		Document doc;
+		try (StageRecorder.Span span = recorder.start("jsoup")) {
+			span.input(html.length());
+			doc = Jsoup.parse(html);
+		}
+
+		try (StageRecorder.Span span = recorder.start("build")) {
+			return MdToDocxApp.buildDocx(doc);
+		}
+	}
+
+	/**
+	 * Converts every chunk into a document of its own on the {@link PartPool},
+	 * then copies their body XML into one document in order while later chunks
+	 * are still converting. Every part gets the same styles and list definitions,
+	 * so the copied style and numbering ids stay valid. Parts run under the
+	 * caller's {@link ConversionScheduler} deadline.
+	 */
+	private XWPFDocument buildInParallel(List<MarkdownChunks.Chunk> chunks, String source) throws IOException {
+		Long deadline = ConversionScheduler.currentDeadline();
+		List<Future<XWPFDocument>> parts = new ArrayList<>(chunks.size());
+		for (MarkdownChunks.Chunk chunk : chunks) {
+			parts.add(PartPool.POOL.submit(() -> ConversionScheduler.callWithDeadline(deadline, () -> buildPart(chunk, source))));
+		}
+
+		XWPFDocument xdoc = new XWPFDocument();
+		// Parts taken so far; each taken part is closed by the loop, failed or not
+		int taken = 0;
+		try {
+			DocxStyles.apply(xdoc);
+			MdToDocxApp.ensureListNumberings(xdoc);
+			// Copy in front of the section properties, which must stay last in the body
+			try (XmlCursor to = xdoc.getDocument().getBody().getSectPr().newCursor()) {
+				while (taken < parts.size()) {
+					try (XWPFDocument part = join(parts.get(taken++));
+						 XmlCursor from = part.getDocument().getBody().newCursor()) {
+						for (boolean more = from.toFirstChild(); more; more = from.toNextSibling()) {
+							if (!SECTION_PROPERTIES.equals(from.getName().getLocalPart())) {
+								from.copyXml(to);
+							}
+						}
+					}
+				}
+			}
+			return xdoc;
+		} catch (IOException | RuntimeException | Error e) {
+			for (int i = taken; i < parts.size(); i++) {
+				discard(parts.get(i));
+			}
+			xdoc.close();
+			throw e;
+		}
+	}
+
+	private XWPFDocument buildPart(MarkdownChunks.Chunk chunk, String source) throws IOException {
+		ConversionScheduler.checkDeadline("parse");
+		Node mdDocument = parser.parse(chunk.text);
+		ConversionScheduler.checkDeadline("build");
+		if (engine == DocxEngine.DIRECT) {
+			return new MarkdownXwpfWriter(mdDocument, source, chunk.firstLine).build();
+		}
+		return MdToDocxApp.buildDocx(Jsoup.parse(renderer.render(mdDocument)));
+	}
+
+	private static XWPFDocument join(Future<XWPFDocument> part) throws IOException {
+		try {
+			return part.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while converting in parallel");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Workers for {@link #buildInParallel}, started on first use. Not the common
+	 * pool, where parallel streams and other libraries' tasks would compete for
+	 * the same threads.
+	 */
+	private static final class PartPool {
+		private static final AtomicInteger ID = new AtomicInteger();
+		static final ExecutorService POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			Thread t = new Thread(r, "md-to-docx-part-" + ID.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/** Cancels a part that is no longer needed, closing it if it already finished. */
+	private static void discard(Future<XWPFDocument> part) {
+		if (!part.cancel(false) && part.isDone()) {
+			try {
+				part.get().close();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException | IOException e) {
+				// It failed, or nothing was written to it; there is nothing left to lose
+			}
+		}
+	}
+}
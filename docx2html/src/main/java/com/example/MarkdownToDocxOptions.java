@@ -0,0 +1,50 @@
+package com.example;
+
+import java.util.Objects;
+
+/**
+ * Settings for {@link MarkdownToDocxConverter}.
+ */
+public class MarkdownToDocxOptions {
+
+	private DocxEngine engine = DocxEngine.HTML;
+	private boolean parallel;
+	private ConversionListener listener;
+
+	public static MarkdownToDocxOptions create() {
+		return new MarkdownToDocxOptions();
+	}
+
+	public MarkdownToDocxOptions engine(DocxEngine engine) {
+		this.engine = Objects.requireNonNull(engine, "engine");
+		return this;
+	}
+
+	/**
+	 * Split large inputs at top-level block boundaries and convert the pieces on
+	 * the converter's own part pool, under the caller's conversion deadline.
+	 * Inputs too small to split convert as usual.
+	 */
+	public MarkdownToDocxOptions parallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
+	/** Receives per-stage timings after every conversion; {@code null} for none. */
+	public MarkdownToDocxOptions listener(ConversionListener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	public DocxEngine getEngine() {
+		return engine;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	public ConversionListener getListener() {
+		return listener;
+	}
+}
@@ -0,0 +1,287 @@
+package com.example;
+
+import com.vladsch.flexmark.ast.BlockQuote;
+import com.vladsch.flexmark.ast.BulletList;
+import com.vladsch.flexmark.ast.Code;
+import com.vladsch.flexmark.ast.DelimitedLinkNode;
+import com.vladsch.flexmark.ast.Emphasis;
+import com.vladsch.flexmark.ast.FencedCodeBlock;
+import com.vladsch.flexmark.ast.HardLineBreak;
+import com.vladsch.flexmark.ast.Heading;
+import com.vladsch.flexmark.ast.HtmlBlock;
+import com.vladsch.flexmark.ast.HtmlEntity;
+import com.vladsch.flexmark.ast.HtmlInline;
+import com.vladsch.flexmark.ast.HtmlInlineComment;
+import com.vladsch.flexmark.ast.Image;
+import com.vladsch.flexmark.ast.ImageRef;
+import com.vladsch.flexmark.ast.IndentedCodeBlock;
+import com.vladsch.flexmark.ast.ListItem;
+import com.vladsch.flexmark.ast.OrderedList;
+import com.vladsch.flexmark.ast.Paragraph;
+import com.vladsch.flexmark.ast.SoftLineBreak;
+import com.vladsch.flexmark.ast.StrongEmphasis;
+import com.vladsch.flexmark.ast.Text;
+import com.vladsch.flexmark.ast.ThematicBreak;
+import com.vladsch.flexmark.util.ast.Block;
+import com.vladsch.flexmark.util.ast.Node;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Builds a DOCX straight from flexmark's AST, without rendering HTML and parsing
+ * it again with jsoup. Formatting follows {@link MdToDocxApp#buildDocx}: tables
+ * and images are dropped, and only raw HTML blocks still go through jsoup.
+ * Failures name the Markdown line of the node being written.
+ */
+class MarkdownXwpfWriter {
+
+	private final Node markdown;
+	private final String source;
+	private final int firstLine;
+	private XWPFDocument xdoc;
+	private MdToDocxApp.ListNumberingIds listIds;
+	private Node current;
+
+	// Inline state of the paragraph being filled; the counters nest emphasis and inline HTML tags
+	private final StringBuilder text = new StringBuilder();
+	private RunBuilder runs;
+	private int bold;
+	private int italic;
+	private int underline;
+
+	/** {@code source} only labels error messages and may be {@code null}. */
+	MarkdownXwpfWriter(Node markdown, String source) {
+		this(markdown, source, 0);
+	}
+
+	/** For a piece of a larger document whose first line is line {@code firstLine} (zero-based) of the whole. */
+	MarkdownXwpfWriter(Node markdown, String source, int firstLine) {
+		this.markdown = Objects.requireNonNull(markdown, "markdown");
+		this.source = source;
+		this.firstLine = firstLine;
+	}
+
+	XWPFDocument build() throws IOException {
+		xdoc = new XWPFDocument();
+		try {
+			DocxStyles.apply(xdoc);
+			listIds = MdToDocxApp.ensureListNumberings(xdoc);
+			for (Node node = markdown.getFirstChild(); node != null; node = node.getNext()) {
+				block(node, 0);
+			}
+			return xdoc;
+		} catch (RuntimeException e) {
+			try {
+				xdoc.close();
+			} catch (IOException closing) {
+				e.addSuppressed(closing);
+			}
+			// Styles and numbering come before the first block, when there is no node yet
+			throw new IOException(location() + ": cannot convert "
+				+ (current != null ? current.getNodeName() : "document setup"), e);
+		}
+	}
+
+	private String location() {
+		String name = source != null ? source : "markdown";
+		return current != null ? name + ":" + (firstLine + current.getStartLineNumber() + 1) : name;
+	}
+
+	private void block(Node node, int listLevel) {
+		current = node;
+		if (node instanceof Heading) {
+			XWPFParagraph p = xdoc.createParagraph();
+			p.setStyle(DocxStyles.heading(((Heading) node).getLevel()));
+			inlineParagraph(p, node);
+		} else if (node instanceof Paragraph) {
+			inlineParagraph(xdoc.createParagraph(), node);
+		} else if (node instanceof BlockQuote) {
+			for (Node child = node.getFirstChild(); child != null; child = child.getNext()) {
+				if (child instanceof Paragraph) {
+					current = child;
+					XWPFParagraph p = xdoc.createParagraph();
+					p.setIndentationLeft(720);
+					inlineParagraph(p, child);
+				} else {
+					block(child, listLevel);
+				}
+			}
+		} else if (node instanceof FencedCodeBlock || node instanceof IndentedCodeBlock) {
+			codeBlock(((Block) node).getContentChars().toString());
+		} else if (node instanceof BulletList) {
+			list(node, false, listLevel);
+		} else if (node instanceof OrderedList) {
+			list(node, true, listLevel);
+		} else if (node instanceof ThematicBreak) {
+			xdoc.createParagraph().createRun().setText("────────");
+		} else if (node instanceof HtmlBlock) {
+			Document fragment = Jsoup.parseBodyFragment(node.getChars().toString());
+			fragment.select("table, thead, tbody, tfoot, tr, td, th, img, figure").remove();
+			for (Element el : fragment.body().children()) {
+				MdToDocxApp.appendBlockElementToDoc(xdoc, el, listIds, listLevel);
+			}
+		} else {
+			// Containers we have no mapping for; leaves such as references and comments write nothing
+			for (Node child = node.getFirstChild(); child != null; child = child.getNext()) {
+				block(child, listLevel);
+			}
+		}
+	}
+
+	private void list(Node list, boolean ordered, int level) {
+		for (Node item = list.getFirstChild(); item != null; item = item.getNext()) {
+			if (!(item instanceof ListItem)) continue;
+			current = item;
+			XWPFParagraph p = xdoc.createParagraph();
+			listIds.apply(p, ordered, level);
+			startParagraph(p);
+			boolean first = true;
+			for (Node child = item.getFirstChild(); child != null; child = child.getNext()) {
+				if (child instanceof Paragraph) {
+					if (!first) {
+						flush();
+						runs.lineBreak();
+					}
+					inline(child);
+					first = false;
+				}
+			}
+			flush();
+			runs.finish();
+			// Nested lists and other blocks follow the item's own line
+			for (Node child = item.getFirstChild(); child != null; child = child.getNext()) {
+				if (!(child instanceof Paragraph)) {
+					block(child, level + 1);
+				}
+			}
+		}
+	}
+
+	private void codeBlock(String code) {
+		RunBuilder codeRuns = new RunBuilder(xdoc.createParagraph());
+		int end = code.length();
+		while (end > 0 && (code.charAt(end - 1) == '\n' || code.charAt(end - 1) == '\r')) end--;
+		if (end > 0) {
+			codeRuns.text(code.substring(0, end), RunBuilder.CODE).lineBreak();
+		}
+		codeRuns.finish();
+	}
+
+	private void inlineParagraph(XWPFParagraph p, Node node) {
+		startParagraph(p);
+		inline(node);
+		flush();
+		runs.finish();
+	}
+
+	private void startParagraph(XWPFParagraph p) {
+		runs = new RunBuilder(p);
+		bold = 0;
+		italic = 0;
+		underline = 0;
+		text.setLength(0);
+	}
+
+	private void inline(Node parent) {
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNext()) {
+			current = node;
+			if (node instanceof Text || node instanceof HtmlEntity) {
+				appendText(node.getChars().unescape());
+			} else if (node instanceof SoftLineBreak) {
+				appendText(" ");
+			} else if (node instanceof HardLineBreak) {
+				flush();
+				runs.lineBreak();
+			} else if (node instanceof StrongEmphasis) {
+				flush();
+				bold++;
+				inline(node);
+				flush();
+				bold--;
+			} else if (node instanceof Emphasis) {
+				flush();
+				italic++;
+				inline(node);
+				flush();
+				italic--;
+			} else if (node instanceof Code) {
+				flush();
+				StringBuilder code = new StringBuilder();
+				appendCollapsed(code, ((Code) node).getText());
+				runs.text(code, RunBuilder.CODE);
+			} else if (node instanceof DelimitedLinkNode) {
+				appendText(((DelimitedLinkNode) node).getText());
+			} else if (node instanceof HtmlInline) {
+				htmlTag(node.getChars().toString());
+			} else if (node instanceof Image || node instanceof ImageRef || node instanceof HtmlInlineComment) {
+				// Images are dropped like in the HTML engine
+			} else {
+				// Links and other wrappers contribute their text only
+				inline(node);
+			}
+		}
+	}
+
+	/** Applies the inline tags the HTML engine understands; any other tag is ignored. */
+	private void htmlTag(String tag) {
+		boolean closing = tag.startsWith("</");
+		int start = closing ? 2 : 1;
+		int end = start;
+		while (end < tag.length() && Character.isLetterOrDigit(tag.charAt(end))) end++;
+		String name = tag.substring(start, end).toLowerCase(Locale.ROOT);
+		int delta = closing ? -1 : 1;
+		switch (name) {
+			case "b":
+			case "strong":
+				flush();
+				bold = Math.max(0, bold + delta);
+				break;
+			case "i":
+			case "em":
+				flush();
+				italic = Math.max(0, italic + delta);
+				break;
+			case "u":
+				flush();
+				underline = Math.max(0, underline + delta);
+				break;
+			case "br":
+				flush();
+				runs.lineBreak();
+				break;
+			default:
+		}
+	}
+
+	/** Buffers text until the formatting changes, collapsing whitespace across node boundaries. */
+	private void appendText(CharSequence chars) {
+		appendCollapsed(text, chars);
+	}
+
+	private void flush() {
+		if (text.length() == 0) return;
+		runs.text(text, (bold > 0 ? RunBuilder.BOLD : 0)
+			| (italic > 0 ? RunBuilder.ITALIC : 0)
+			| (underline > 0 ? RunBuilder.UNDERLINE : 0));
+		text.setLength(0);
+	}
+
+	/** Appends {@code chars} with whitespace runs collapsed to one space, as HTML renders them. */
+	private static void appendCollapsed(StringBuilder sb, CharSequence chars) {
+		for (int i = 0; i < chars.length(); i++) {
+			char c = chars.charAt(i);
+			if (Character.isWhitespace(c)) {
+				if (sb.length() == 0 || sb.charAt(sb.length() - 1) != ' ') sb.append(' ');
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+}
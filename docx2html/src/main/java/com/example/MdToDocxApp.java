@@ -1,111 +1,139 @@
 package com.example;
 
-import com.vladsch.flexmark.parser.Parser;
-import com.vladsch.flexmark.util.ast.Node;
-import com.vladsch.flexmark.html.HtmlRenderer;
 import org.apache.poi.xwpf.usermodel.ParagraphAlignment;
-import org.apache.poi.xwpf.usermodel.UnderlinePatterns;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFParagraph;
 import org.apache.poi.xwpf.usermodel.XWPFRun;
 import org.apache.poi.xwpf.usermodel.XWPFNumbering;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTAbstractNum;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTInd;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTLvl;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STMultiLevelType;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.STNumberFormat;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.TextNode;
 import org.jsoup.select.Elements;
 
-import java.io.FileOutputStream;
-import java.io.OutputStream;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Objects;
 
 public class MdToDocxApp {
 
 	public static void main(String[] args) {
+		int status = run(args);
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/** The command line behind {@link #main}; returns the exit status instead of exiting. */
+	static int run(String[] args) {
 		if (args.length < 2) {
-			System.out.println("Usage: java -cp build/libs/* com.example.MdToDocxApp <input.md> <output.docx>");
-			System.out.println("Or with Gradle: gradle run -PmainClass=com.example.MdToDocxApp -PappArgs=\"[/abs/input.md,/abs/output.docx]\"");
-			return;
+			printUsage();
+			return 0;
 		}
 
 		Path inputPath = Paths.get(args[0]).toAbsolutePath().normalize();
 		Path outputPath = Paths.get(args[1]).toAbsolutePath().normalize();
-
+		MarkdownToDocxOptions options = MarkdownToDocxOptions.create();
+		Path metricsPath = null;
 		try {
-			convertMarkdownToDocx(inputPath, outputPath);
+			for (int i = 2; i < args.length; i++) {
+				if (args[i].startsWith("--metrics=")) {
+					metricsPath = Paths.get(args[i].substring("--metrics=".length())).toAbsolutePath().normalize();
+				} else if (args[i].equals("--parallel")) {
+					options.parallel(true);
+				} else {
+					options.engine(Arguments.enumValue("engine", DocxEngine.class, args[i]));
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			return 2;
+		}
+
+		try (Writer metrics = metricsPath != null ? Files.newBufferedWriter(metricsPath, StandardCharsets.UTF_8,
+			StandardOpenOption.CREATE, StandardOpenOption.APPEND) : null) {
+			if (metrics != null) {
+				options.listener(ConversionListener.jsonLines(metrics));
+			}
+			convertMarkdownToDocx(inputPath, outputPath, options);
 			System.out.println("Converted: " + inputPath + " -> " + outputPath);
+			return 0;
 		} catch (Exception e) {
 			e.printStackTrace();
-			System.exit(1);
+			return 1;
 		}
 	}
 
+	private static void printUsage() {
+		System.out.println("Usage: java -cp build/libs/* com.example.MdToDocxApp <input.md> <output.docx> [html|direct] [--parallel] [--metrics=<file.jsonl>]");
+		System.out.println("Or with Gradle: gradle run -PmainClass=com.example.MdToDocxApp -PappArgs=\"[/abs/input.md,/abs/output.docx]\"");
+	}
+
 	public static void convertMarkdownToDocx(Path inputMdPath, Path outputDocxPath) throws Exception {
 		Objects.requireNonNull(inputMdPath, "inputMdPath");
 		Objects.requireNonNull(outputDocxPath, "outputDocxPath");
+		DefaultConverter.INSTANCE.convert(inputMdPath, outputDocxPath);
+	}
 
-		Files.createDirectories(outputDocxPath.getParent());
-
-		String markdown = new String(Files.readAllBytes(inputMdPath), StandardCharsets.UTF_8);
+	public static void convertMarkdownToDocx(Path inputMdPath, Path outputDocxPath, MarkdownToDocxOptions options) throws Exception {
+		Objects.requireNonNull(inputMdPath, "inputMdPath");
+		Objects.requireNonNull(outputDocxPath, "outputDocxPath");
+		new MarkdownToDocxConverter(options).convert(inputMdPath, outputDocxPath);
+	}
 
-		Parser parser = Parser.builder().build();
-		Node mdDocument = parser.parse(markdown);
-		HtmlRenderer renderer = HtmlRenderer.builder().build();
-		String html = renderer.render(mdDocument);
+	/** Built on first use, then shared by every call. */
+	private static final class DefaultConverter {
+		static final MarkdownToDocxConverter INSTANCE = new MarkdownToDocxConverter();
+	}
 
-		Document doc = Jsoup.parse(html);
+	/** Builds a new DOCX from the body of flexmark's HTML rendering. Tables and images are dropped. */
+	static XWPFDocument buildDocx(Document doc) {
 		// Remove tables and images entirely
 		doc.select("table, thead, tbody, tfoot, tr, td, th, img, figure").remove();
 
-		try (XWPFDocument xdoc = new XWPFDocument(); OutputStream os = new FileOutputStream(outputDocxPath.toFile())) {
-			ListNumberingIds listIds = ensureListNumberings(xdoc);
-			for (Element el : doc.body().children()) {
-				appendBlockElementToDoc(xdoc, el, listIds, 0);
-			}
-			xdoc.write(os);
+		XWPFDocument xdoc = new XWPFDocument();
+		DocxStyles.apply(xdoc);
+		ListNumberingIds listIds = ensureListNumberings(xdoc);
+		for (Element el : doc.body().children()) {
+			appendBlockElementToDoc(xdoc, el, listIds, 0);
 		}
+		return xdoc;
 	}
 
-	private static void appendBlockElementToDoc(XWPFDocument xdoc, Element el, ListNumberingIds listIds, int listLevel) {
+	static void appendBlockElementToDoc(XWPFDocument xdoc, Element el, ListNumberingIds listIds, int listLevel) {
 		String tag = el.tagName().toLowerCase();
 		switch (tag) {
 			case "h1":
-				createParagraphFromInline(xdoc, el, 26, true, isCentered(el), "Heading1");
-				break;
 			case "h2":
-				createParagraphFromInline(xdoc, el, 22, true, isCentered(el), "Heading2");
-				break;
 			case "h3":
-				createParagraphFromInline(xdoc, el, 18, true, isCentered(el), "Heading3");
-				break;
 			case "h4":
-				createParagraphFromInline(xdoc, el, 16, true, isCentered(el), "Heading4");
-				break;
 			case "h5":
-				createParagraphFromInline(xdoc, el, 14, true, isCentered(el), "Heading5");
-				break;
 			case "h6":
-				createParagraphFromInline(xdoc, el, 12, true, isCentered(el), "Heading6");
+				createParagraphFromInline(xdoc, el, isCentered(el), DocxStyles.heading(tag.charAt(1) - '0'));
 				break;
 			case "p":
 			case "div":
 			case "center":
-				createParagraphFromInline(xdoc, el, 12, false, isCentered(el) || tag.equals("center"), null);
+				createParagraphFromInline(xdoc, el, isCentered(el) || tag.equals("center"), null);
 				break;
 			case "blockquote": {
 				XWPFParagraph p = xdoc.createParagraph();
 				p.setIndentationLeft(720);
 				if (isCentered(el)) p.setAlignment(ParagraphAlignment.CENTER);
-				appendInlineContent(p, el, 12, false);
+				RunBuilder runs = new RunBuilder(p);
+				appendInlineContent(runs, el);
+				runs.finish();
 				break;
 			}
 			case "pre":
@@ -124,104 +152,85 @@ public class MdToDocxApp {
 				break;
 			}
 			default:
-				createParagraphFromInline(xdoc, el, 12, false, isCentered(el), null);
+				createParagraphFromInline(xdoc, el, isCentered(el), null);
 		}
 	}
 
-	private static void createParagraphFromInline(XWPFDocument xdoc, Element el, int fontSize, boolean bold, boolean centered, String styleId) {
+	private static void createParagraphFromInline(XWPFDocument xdoc, Element el, boolean centered, String styleId) {
 		XWPFParagraph p = xdoc.createParagraph();
 		if (centered) p.setAlignment(ParagraphAlignment.CENTER);
 		if (styleId != null) p.setStyle(styleId);
-		appendInlineContent(p, el, fontSize, bold);
+		RunBuilder runs = new RunBuilder(p);
+		appendInlineContent(runs, el);
+		runs.finish();
 	}
 
-	private static void appendInlineContent(XWPFParagraph p, Element el, int baseFontSize, boolean baseBold) {
+	private static void appendInlineContent(RunBuilder runs, Element el) {
 		for (org.jsoup.nodes.Node node : el.childNodes()) {
-			if (node instanceof TextNode) {
-				String text = ((TextNode) node).text();
-				appendTextRun(p, text, baseFontSize, baseBold, false, false);
-			} else if (node instanceof Element) {
-				Element child = (Element) node;
-				String tag = child.tagName().toLowerCase();
-				switch (tag) {
-					case "strong":
-					case "b":
-						appendInlineContentWithOverrides(p, child, baseFontSize, true, false, false);
-						break;
-					case "em":
-					case "i":
-						appendInlineContentWithOverrides(p, child, baseFontSize, baseBold, true, false);
-						break;
-					case "u":
-						appendInlineContentWithOverrides(p, child, baseFontSize, baseBold, false, true);
-						break;
-					case "code": {
-						String codeText = child.text();
-						XWPFRun r = p.createRun();
-						r.setText(codeText);
-						r.setFontFamily("Courier New");
-						r.setFontSize(baseFontSize);
-						break;
-					}
-					case "br": {
-						XWPFRun r = p.createRun();
-						r.addBreak();
-						break;
-					}
-					case "span":
-					case "small":
-						appendInlineContent(p, child, baseFontSize, baseBold);
-						break;
-					default:
-						appendInlineContent(p, child, baseFontSize, baseBold);
-				}
+			appendInlineNode(runs, node);
+		}
+	}
+
+	private static void appendInlineNode(RunBuilder runs, org.jsoup.nodes.Node node) {
+		if (node instanceof TextNode) {
+			runs.text(((TextNode) node).text(), RunBuilder.PLAIN);
+		} else if (node instanceof Element) {
+			Element child = (Element) node;
+			String tag = child.tagName().toLowerCase();
+			switch (tag) {
+				case "strong":
+				case "b":
+					appendInlineContentWithOverrides(runs, child, RunBuilder.BOLD);
+					break;
+				case "em":
+				case "i":
+					appendInlineContentWithOverrides(runs, child, RunBuilder.ITALIC);
+					break;
+				case "u":
+					appendInlineContentWithOverrides(runs, child, RunBuilder.UNDERLINE);
+					break;
+				case "code":
+					runs.text(child.text(), RunBuilder.CODE);
+					break;
+				case "br":
+					runs.lineBreak();
+					break;
+				case "span":
+				case "small":
+					appendInlineContent(runs, child);
+					break;
+				default:
+					appendInlineContent(runs, child);
 			}
 		}
 	}
 
-	private static void appendInlineContentWithOverrides(XWPFParagraph p, Element el, int fontSize, boolean bold, boolean italic, boolean underline) {
+	private static void appendInlineContentWithOverrides(RunBuilder runs, Element el, int format) {
 		for (org.jsoup.nodes.Node node : el.childNodes()) {
 			if (node instanceof TextNode) {
-				appendTextRun(p, ((TextNode) node).text(), fontSize, bold, italic, underline);
+				runs.text(((TextNode) node).text(), format);
 			} else if (node instanceof Element) {
-				appendInlineContentWithOverrides(p, (Element) node, fontSize, bold, italic, underline);
+				appendInlineContentWithOverrides(runs, (Element) node, format);
 			}
 		}
 	}
 
-	private static void appendTextRun(XWPFParagraph p, String text, int fontSize, boolean bold, boolean italic, boolean underline) {
-		if (text == null || text.isEmpty()) return;
-		String[] parts = text.split("\r?\n", -1);
-		for (int i = 0; i < parts.length; i++) {
-			XWPFRun r = p.createRun();
-			r.setText(parts[i]);
-			r.setFontSize(fontSize);
-			r.setBold(bold);
-			r.setItalic(italic);
-			if (underline) r.setUnderline(UnderlinePatterns.SINGLE);
-			if (i < parts.length - 1) r.addBreak();
-		}
-	}
-
 	private static void createCodeBlock(XWPFDocument xdoc, Element pre) {
-		XWPFParagraph p = xdoc.createParagraph();
+		RunBuilder runs = new RunBuilder(xdoc.createParagraph());
 		for (org.jsoup.nodes.Node node : pre.childNodes()) {
+			String text = null;
 			if (node instanceof TextNode) {
-				String text = ((TextNode) node).text();
-				XWPFRun r = p.createRun();
-				r.setFontFamily("Courier New");
-				r.setText(text);
-				r.addBreak();
-			} else if (node instanceof Element) {
-				Element child = (Element) node;
-				if (child.tagName().equalsIgnoreCase("code")) {
-					XWPFRun r = p.createRun();
-					r.setFontFamily("Courier New");
-					r.setText(child.text());
-					r.addBreak();
-				}
+				text = ((TextNode) node).text();
+			} else if (node instanceof Element && ((Element) node).tagName().equalsIgnoreCase("code")) {
+				text = ((Element) node).wholeText();
+			}
+			if (text != null) {
+				// Lines become breaks; the block's final newline is the break after it
+				runs.text(text.endsWith("\n") ? text.substring(0, text.length() - 1) : text, RunBuilder.CODE);
+				runs.lineBreak();
 			}
 		}
+		runs.finish();
 	}
 
 	private static boolean isCentered(Element el) {
@@ -233,67 +242,86 @@ public class MdToDocxApp {
 		return classAttr.contains("text-center") || classAttr.contains("center");
 	}
 
-	private static void appendList(XWPFDocument xdoc, Element listEl, ListNumberingIds ids, boolean ordered, int level) {
-		BigInteger numId = ordered ? ids.decimalNumId : ids.bulletNumId;
+	/**
+	 * Writes one paragraph per {@code <li>} and recurses into directly nested lists.
+	 * Each item's own line is read in place, skipping its sublists, so every node is
+	 * visited once however deep the outline goes.
+	 */
+	static void appendList(XWPFDocument xdoc, Element listEl, ListNumberingIds ids, boolean ordered, int level) {
 		for (Element li : listEl.children()) {
 			if (!li.tagName().equalsIgnoreCase("li")) continue;
-			// Paragraph for this list item (exclude nested lists content for the text line)
-			Element liLine = li.clone();
-			liLine.select("ul,ol").remove();
 			XWPFParagraph p = xdoc.createParagraph();
-			p.setNumID(numId);
-			p.setNumILvl(BigInteger.valueOf(level));
-			appendInlineContent(p, liLine, 12, false);
-			// Nested lists
+			ids.apply(p, ordered, level);
+			RunBuilder runs = new RunBuilder(p);
+			for (org.jsoup.nodes.Node node : li.childNodes()) {
+				if (!isList(node)) {
+					appendInlineNode(runs, node);
+				}
+			}
+			runs.finish();
 			for (Element nested : li.children()) {
-				String t = nested.tagName().toLowerCase();
-				if (t.equals("ul")) {
-					appendList(xdoc, nested, ids, false, level + 1);
-				} else if (t.equals("ol")) {
-					appendList(xdoc, nested, ids, true, level + 1);
+				if (isList(nested)) {
+					appendList(xdoc, nested, ids, nested.tagName().equalsIgnoreCase("ol"), level + 1);
 				}
 			}
 		}
 	}
 
-	private static ListNumberingIds ensureListNumberings(XWPFDocument xdoc) {
-		XWPFNumbering numbering = xdoc.createNumbering();
-
-		// Bullet abstract numbering
-		CTAbstractNum bulletAbstract = CTAbstractNum.Factory.newInstance();
-		bulletAbstract.addNewLvl();
-		CTLvl bulletLvl = bulletAbstract.getLvlArray(0);
-		bulletLvl.setIlvl(BigInteger.ZERO);
-		bulletLvl.addNewNumFmt().setVal(STNumberFormat.BULLET);
-		bulletLvl.addNewLvlText().setVal("•");
-		bulletLvl.addNewStart().setVal(BigInteger.ONE);
-		// add some indentation for bullets
-		bulletLvl.addNewPPr().addNewInd().setLeft(BigInteger.valueOf(720));
+	private static boolean isList(org.jsoup.nodes.Node node) {
+		return node instanceof Element
+			&& (((Element) node).tagName().equalsIgnoreCase("ul") || ((Element) node).tagName().equalsIgnoreCase("ol"));
+	}
 
-		BigInteger bulletAbsId = numbering.addAbstractNum(new org.apache.poi.xwpf.usermodel.XWPFAbstractNum(bulletAbstract));
-		BigInteger bulletNumId = numbering.addNum(bulletAbsId);
+	/** Adds one bullet and one decimal list definition, each with all nine levels Word supports. */
+	static ListNumberingIds ensureListNumberings(XWPFDocument xdoc) {
+		XWPFNumbering numbering = xdoc.createNumbering();
+		ListNumberingIds ids = new ListNumberingIds();
+		ids.bulletNumId = numbering.addNum(numbering.addAbstractNum(
+			new org.apache.poi.xwpf.usermodel.XWPFAbstractNum(multiLevelAbstractNum(false))));
+		ids.decimalNumId = numbering.addNum(numbering.addAbstractNum(
+			new org.apache.poi.xwpf.usermodel.XWPFAbstractNum(multiLevelAbstractNum(true))));
+		return ids;
+	}
 
-		// Decimal abstract numbering
-		CTAbstractNum decAbstract = CTAbstractNum.Factory.newInstance();
-		decAbstract.addNewLvl();
-		CTLvl decLvl = decAbstract.getLvlArray(0);
-		decLvl.setIlvl(BigInteger.ZERO);
-		decLvl.addNewNumFmt().setVal(STNumberFormat.DECIMAL);
-		decLvl.addNewLvlText().setVal("%1.");
-		decLvl.addNewStart().setVal(BigInteger.ONE);
-		decLvl.addNewPPr().addNewInd().setLeft(BigInteger.valueOf(720));
+	private static final STNumberFormat.Enum[] DECIMAL_FORMATS = {
+		STNumberFormat.DECIMAL, STNumberFormat.LOWER_LETTER, STNumberFormat.LOWER_ROMAN};
 
-		BigInteger decAbsId = numbering.addAbstractNum(new org.apache.poi.xwpf.usermodel.XWPFAbstractNum(decAbstract));
-		BigInteger decNumId = numbering.addNum(decAbsId);
+	private static final String[] BULLETS = {"•", "◦", "▪"};
 
-		ListNumberingIds ids = new ListNumberingIds();
-		ids.bulletNumId = bulletNumId;
-		ids.decimalNumId = decNumId;
-		return ids;
+	private static CTAbstractNum multiLevelAbstractNum(boolean ordered) {
+		CTAbstractNum abstractNum = CTAbstractNum.Factory.newInstance();
+		// XWPFNumbering does not assign ids to new definitions; without one the num links to nothing
+		abstractNum.setAbstractNumId(BigInteger.valueOf(ordered ? 1 : 0));
+		abstractNum.addNewMultiLevelType().setVal(STMultiLevelType.HYBRID_MULTILEVEL);
+		for (int i = 0; i <= ListNumberingIds.MAX_LEVEL; i++) {
+			CTLvl lvl = abstractNum.addNewLvl();
+			lvl.setIlvl(BigInteger.valueOf(i));
+			lvl.addNewStart().setVal(BigInteger.ONE);
+			if (ordered) {
+				// 1. a. i. and round again, like Word's default outline
+				lvl.addNewNumFmt().setVal(DECIMAL_FORMATS[i % DECIMAL_FORMATS.length]);
+				lvl.addNewLvlText().setVal("%" + (i + 1) + ".");
+			} else {
+				lvl.addNewNumFmt().setVal(STNumberFormat.BULLET);
+				lvl.addNewLvlText().setVal(BULLETS[i % BULLETS.length]);
+			}
+			CTInd ind = lvl.addNewPPr().addNewInd();
+			ind.setLeft(BigInteger.valueOf(720L * (i + 1)));
+			ind.setHanging(BigInteger.valueOf(360));
+		}
+		return abstractNum;
 	}
 
-	private static class ListNumberingIds {
+	static class ListNumberingIds {
+		/** Deepest {@code ilvl} Word knows; deeper nesting is shown at this level. */
+		static final int MAX_LEVEL = 8;
+
 		BigInteger bulletNumId;
 		BigInteger decimalNumId;
+
+		void apply(XWPFParagraph p, boolean ordered, int level) {
+			p.setNumID(ordered ? decimalNumId : bulletNumId);
+			p.setNumILvl(BigInteger.valueOf(Math.min(level, MAX_LEVEL)));
+		}
 	}
 }
\ No newline at end of file
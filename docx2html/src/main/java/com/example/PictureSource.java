@@ -0,0 +1,40 @@
+package com.example;
+
+import org.apache.poi.openxml4j.opc.PackagePart;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Where an {@link ImageOutput} reads picture bytes from: the package part
+ * itself, or a smaller version {@link ImageOptimizer} made of it.
+ */
+interface PictureSource {
+
+	/** The bytes as stored in the DOCX. */
+	PictureSource PARTS = new PictureSource() {
+		@Override
+		public InputStream open(PackagePart part) throws IOException {
+			return part.getInputStream();
+		}
+
+		@Override
+		public String extension(PackagePart part) {
+			return part.getPartName().getExtension().toLowerCase(Locale.ROOT);
+		}
+
+		@Override
+		public long size(PackagePart part) {
+			return part.getSize();
+		}
+	};
+
+	InputStream open(PackagePart part) throws IOException;
+
+	/** Lower-case file extension, also used as the {@code image/} subtype of data URIs. */
+	String extension(PackagePart part);
+
+	/** Byte count, or -1 when unknown. */
+	long size(PackagePart part);
+}
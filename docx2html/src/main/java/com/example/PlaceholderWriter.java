@@ -0,0 +1,200 @@
+package com.example;
+
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writer that swaps {@code MDPH_TABLE_n} / {@code MDPH_IMG_n} placeholders for
+ * their raw HTML blocks while the Markdown passes through, in a single scan.
+ * Tokens may be split across {@code write} calls. Blocks are detached jsoup
+ * elements and are serialised only when their token comes by.
+ *
+ * <p>Placeholders come out of html2md in the order they were created, so the
+ * next expected index decides how many digits belong to a token when the
+ * Markdown has more digits right after it.
+ */
+class PlaceholderWriter extends Writer {
+
+	static final String TABLE_TOKEN = "MDPH_TABLE_";
+	static final String IMAGE_TOKEN = "MDPH_IMG_";
+
+	private static final int MAX_INDEX_DIGITS = 9;
+
+	private final Writer out;
+	private String preamble;
+	private final List<Element> tables;
+	private final List<Element> images;
+	private final StringBuilder pending = new StringBuilder();
+	private int nextTable;
+	private int nextImage;
+
+	/** {@code preamble} goes out ahead of the first character, and not at all when nothing is written. */
+	PlaceholderWriter(Writer out, String preamble, List<Element> tables, List<Element> images) {
+		this.out = Objects.requireNonNull(out, "out");
+		this.preamble = Objects.requireNonNull(preamble, "preamble");
+		this.tables = Objects.requireNonNull(tables, "tables");
+		this.images = Objects.requireNonNull(images, "images");
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		writePreamble(len);
+		int end = off + len;
+		int literalStart = off;
+		for (int i = off; i < end; i++) {
+			char c = cbuf[i];
+			if (pending.length() == 0 && c != 'M') {
+				continue;
+			}
+			out.write(cbuf, literalStart, i - literalStart);
+			feed(c);
+			literalStart = i + 1;
+		}
+		out.write(cbuf, literalStart, end - literalStart);
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		writePreamble(len);
+		int end = off + len;
+		int literalStart = off;
+		for (int i = off; i < end; i++) {
+			char c = str.charAt(i);
+			if (pending.length() == 0 && c != 'M') {
+				continue;
+			}
+			out.write(str, literalStart, i - literalStart);
+			feed(c);
+			literalStart = i + 1;
+		}
+		out.write(str, literalStart, end - literalStart);
+	}
+
+	private void writePreamble(int len) throws IOException {
+		if (len > 0 && !preamble.isEmpty()) {
+			out.write(preamble);
+			preamble = "";
+		}
+	}
+
+	private void feed(char c) throws IOException {
+		if (pending.length() == 0) {
+			if (c == 'M') {
+				pending.append(c);
+			} else {
+				out.write(c);
+			}
+			return;
+		}
+		pending.append(c);
+		if (isTokenPrefix(pending)) {
+			return;
+		}
+		pending.setLength(pending.length() - 1);
+		if (isCompleteToken(pending)) {
+			String token = pending.toString();
+			pending.setLength(0);
+			writeToken(token);
+			feed(c);
+		} else {
+			// Not a token after all: emit the first char and rescan the rest
+			String literal = pending.toString() + c;
+			pending.setLength(0);
+			out.write(literal.charAt(0));
+			for (int i = 1; i < literal.length(); i++) {
+				feed(literal.charAt(i));
+			}
+		}
+	}
+
+	private void writeToken(String token) throws IOException {
+		boolean table = token.startsWith(TABLE_TOKEN);
+		String digits = token.substring(table ? TABLE_TOKEN.length() : IMAGE_TOKEN.length());
+		List<Element> blocks = table ? tables : images;
+		String expected = String.valueOf(table ? nextTable : nextImage);
+
+		int used;
+		if (digits.startsWith(expected)) {
+			used = expected.length();
+		} else if (digits.charAt(0) == '0') {
+			used = 1;
+		} else {
+			used = digits.length();
+			while (used > 0 && Integer.parseInt(digits.substring(0, used)) >= blocks.size()) {
+				used--;
+			}
+		}
+		int index = used > 0 ? Integer.parseInt(digits.substring(0, used)) : -1;
+		if (index < 0 || index >= blocks.size()) {
+			out.write(token);
+			return;
+		}
+		out.write(blocks.get(index).outerHtml());
+		out.write(digits, used, digits.length() - used);
+		if (table) {
+			nextTable = index + 1;
+		} else {
+			nextImage = index + 1;
+		}
+	}
+
+	private static boolean isTokenPrefix(CharSequence s) {
+		return isTokenPrefix(s, TABLE_TOKEN) || isTokenPrefix(s, IMAGE_TOKEN);
+	}
+
+	private static boolean isTokenPrefix(CharSequence s, String token) {
+		int n = s.length();
+		if (n <= token.length()) {
+			return token.regionMatches(0, s.toString(), 0, n);
+		}
+		return n - token.length() <= MAX_INDEX_DIGITS && startsWith(s, token) && allDigits(s, token.length());
+	}
+
+	private static boolean isCompleteToken(CharSequence s) {
+		return s.length() > TABLE_TOKEN.length() && startsWith(s, TABLE_TOKEN) && allDigits(s, TABLE_TOKEN.length())
+			|| s.length() > IMAGE_TOKEN.length() && startsWith(s, IMAGE_TOKEN) && allDigits(s, IMAGE_TOKEN.length());
+	}
+
+	private static boolean startsWith(CharSequence s, String prefix) {
+		for (int i = 0; i < prefix.length(); i++) {
+			if (s.charAt(i) != prefix.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private static boolean allDigits(CharSequence s, int from) {
+		for (int i = from; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') return false;
+		}
+		return true;
+	}
+
+	/** Resolves a token left at the very end of the input. Does not close the target. */
+	void finish() throws IOException {
+		if (pending.length() > 0) {
+			String rest = pending.toString();
+			pending.setLength(0);
+			if (isCompleteToken(rest)) {
+				writeToken(rest);
+			} else {
+				out.write(rest);
+			}
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+}
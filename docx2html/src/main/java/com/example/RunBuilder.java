@@ -0,0 +1,77 @@
+package com.example;
+
+import org.apache.poi.xwpf.usermodel.UnderlinePatterns;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+
+/**
+ * Writes the text of one paragraph in as few runs as possible. Adjacent text
+ * with the same formatting shares a run, and line breaks go into the current
+ * run instead of opening a new one. Sizes and fonts come from
+ * {@link DocxStyles}, so a run only states what its paragraph style does not.
+ * Call {@link #finish()} once the paragraph is complete.
+ */
+final class RunBuilder {
+
+	static final int PLAIN = 0;
+	static final int BOLD = 1;
+	static final int ITALIC = 2;
+	static final int UNDERLINE = 4;
+	static final int CODE = 8;
+
+	private final XWPFParagraph paragraph;
+	private final StringBuilder pending = new StringBuilder();
+	private XWPFRun run;
+	private int format = PLAIN;
+
+	RunBuilder(XWPFParagraph paragraph) {
+		this.paragraph = paragraph;
+	}
+
+	/** Appends {@code chars}; each {@code \n} or {@code \r\n} becomes a line break. */
+	RunBuilder text(CharSequence chars, int format) {
+		if (chars == null || chars.length() == 0) return this;
+		if (format != this.format) {
+			flushText();
+			run = null;
+			this.format = format;
+		}
+		for (int i = 0; i < chars.length(); i++) {
+			char c = chars.charAt(i);
+			if (c == '\n') {
+				lineBreak();
+			} else if (c != '\r' || i + 1 >= chars.length() || chars.charAt(i + 1) != '\n') {
+				pending.append(c);
+			}
+		}
+		return this;
+	}
+
+	RunBuilder lineBreak() {
+		flushText();
+		currentRun().addBreak();
+		return this;
+	}
+
+	void finish() {
+		flushText();
+		run = null;
+	}
+
+	private void flushText() {
+		if (pending.length() == 0) return;
+		currentRun().setText(pending.toString());
+		pending.setLength(0);
+	}
+
+	private XWPFRun currentRun() {
+		if (run == null) {
+			run = paragraph.createRun();
+			if ((format & BOLD) != 0) run.setBold(true);
+			if ((format & ITALIC) != 0) run.setItalic(true);
+			if ((format & UNDERLINE) != 0) run.setUnderline(UnderlinePatterns.SINGLE);
+			if ((format & CODE) != 0) run.setStyle(DocxStyles.CODE);
+		}
+		return run;
+	}
+}
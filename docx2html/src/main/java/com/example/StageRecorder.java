@@ -0,0 +1,242 @@
+package com.example;
+
+import jdk.jfr.FlightRecorder;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times the stages of one conversion on the converting thread and turns them
+ * into {@link ConversionMetrics} and {@link ConversionStageEvent}s. Allocation
+ * comes from HotSpot's per-thread counter, so work a stage hands to other
+ * threads is not included.
+ */
+final class StageRecorder {
+
+	private static final com.sun.management.ThreadMXBean ALLOCATION = allocationBean();
+	private static final boolean JFR = isJfrPresent();
+
+	private final String converter;
+	private final String source;
+	private final Instant startedAt = Instant.now();
+	private final long startNanos = System.nanoTime();
+	private final long startAllocated = allocatedBytes();
+	private final Object totalEvent = JFR ? Jfr.begin() : null;
+	private final List<ConversionMetrics.Stage> stages = new ArrayList<>();
+
+	StageRecorder(String converter, String source) {
+		this.converter = converter;
+		this.source = source;
+	}
+
+	/**
+	 * Starts a stage; close the returned span when it is done. Stage boundaries are
+	 * where a conversion past its {@link ConversionScheduler} deadline gives up.
+	 */
+	Span start(String stage) throws InterruptedIOException {
+		ConversionScheduler.checkDeadline(stage);
+		return new Span(stage);
+	}
+
+	private ConversionMetrics finish(long inputBytes, long outputBytes, Throwable error) {
+		long wall = System.nanoTime() - startNanos;
+		long allocated = ALLOCATION != null ? allocatedBytes() - startAllocated : -1;
+		if (totalEvent != null) {
+			Jfr.commit(totalEvent, converter, source, "total", allocated, inputBytes, outputBytes);
+		}
+		return new ConversionMetrics(converter, source, startedAt, wall, allocated, inputBytes, outputBytes,
+			new ArrayList<>(stages), error != null ? error.toString() : null);
+	}
+
+	/**
+	 * Finishes and hands the metrics to {@code listener}, if any; meant for a
+	 * finally block. A failing listener never changes the conversion's outcome: it
+	 * is suppressed into {@code error}, or printed when the conversion succeeded.
+	 */
+	void report(ConversionListener listener, long inputBytes, long outputBytes, Throwable error) {
+		ConversionMetrics metrics = finish(inputBytes, outputBytes, error);
+		if (listener == null) {
+			return;
+		}
+		try {
+			listener.onConversion(metrics);
+		} catch (RuntimeException e) {
+			if (error != null) {
+				error.addSuppressed(e);
+			} else {
+				System.err.println("Conversion listener failed for " + (source != null ? source : converter) + ": " + e);
+			}
+		}
+	}
+
+	final class Span implements AutoCloseable {
+
+		private final String name;
+		private final long start = System.nanoTime();
+		private final long startAllocated = allocatedBytes();
+		private final Object event = JFR ? Jfr.begin() : null;
+		private long inputBytes = -1;
+		private long outputBytes = -1;
+
+		private Span(String name) {
+			this.name = name;
+		}
+
+		Span input(long bytes) {
+			this.inputBytes = bytes;
+			return this;
+		}
+
+		Span output(long bytes) {
+			this.outputBytes = bytes;
+			return this;
+		}
+
+		@Override
+		public void close() {
+			long wall = System.nanoTime() - start;
+			long allocated = ALLOCATION != null ? allocatedBytes() - startAllocated : -1;
+			stages.add(new ConversionMetrics.Stage(name, wall, allocated, inputBytes, outputBytes));
+			if (event != null) {
+				Jfr.commit(event, converter, source, name, allocated, inputBytes, outputBytes);
+			}
+		}
+	}
+
+	private static long allocatedBytes() {
+		return ALLOCATION != null ? ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+				if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+					return hotspot;
+				}
+			}
+		} catch (LinkageError | SecurityException e) {
+			// Not a HotSpot-like runtime; allocation stays unreported
+		}
+		return null;
+	}
+
+	private static boolean isJfrPresent() {
+		try {
+			Class.forName("jdk.jfr.Event", false, StageRecorder.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Keeps the jdk.jfr types out of StageRecorder's signatures so it still loads
+	 * on runtimes without JFR. Events are passed around as Object for that reason.
+	 */
+	private static final class Jfr {
+
+		/**
+		 * A started event, or {@code null} when no recording wants it. Until a
+		 * recording starts, JFR is left alone: registering the first event class
+		 * costs a short-lived run far more than the conversion of a small document.
+		 */
+		static Object begin() {
+			if (!FlightRecorder.isInitialized()) {
+				return null;
+			}
+			ConversionStageEvent event = new ConversionStageEvent();
+			if (!event.isEnabled()) {
+				return null;
+			}
+			event.begin();
+			return event;
+		}
+
+		static void commit(Object started, String converter, String source, String stage,
+						   long allocated, long inputBytes, long outputBytes) {
+			ConversionStageEvent event = (ConversionStageEvent) started;
+			event.end();
+			if (event.shouldCommit()) {
+				event.converter = converter;
+				event.source = source;
+				event.stage = stage;
+				event.allocatedBytes = allocated;
+				event.inputBytes = inputBytes;
+				event.outputBytes = outputBytes;
+				event.commit();
+			}
+		}
+	}
+
+	/** Counts bytes read so input size is known even for streams. */
+	static final class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) count += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+
+	/** Counts bytes written so output size is known without buffering it. */
+	static final class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
+}
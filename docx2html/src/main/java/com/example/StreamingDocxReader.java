@@ -0,0 +1,539 @@
+package com.example;
+
+import org.apache.poi.ooxml.POIXMLException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.util.Units;
+import org.apache.poi.xwpf.usermodel.XWPFRelation;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Low-memory DOCX reader: streams {@code word/document.xml} out of the package
+ * with StAX and writes Markdown as each paragraph or table completes, instead of
+ * loading the XMLBeans model. Only one block (a paragraph, or one top-level table)
+ * is held at a time, and pictures are read from their parts when written.
+ *
+ * <p>Output matches {@link XwpfMarkdownWriter} for the features both support.
+ */
+class StreamingDocxReader {
+
+	private static final String W = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+	private static final String R = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	private static final String A = "http://schemas.openxmlformats.org/drawingml/2006/main";
+	private static final String WP = "http://schemas.openxmlformats.org/drawingml/2006/wordprocessingDrawing";
+	private static final String MC = "http://schemas.openxmlformats.org/markup-compatibility/2006";
+
+	private final PackagePart documentPart;
+	private final MarkdownBlockWriter out;
+	private final XMLInputFactory xmlInputFactory;
+	private final Map<String, Integer> headingLevelByStyle = new HashMap<>();
+	private final Map<String, Map<Integer, String>> numFmtByNumId = new HashMap<>();
+
+	StreamingDocxReader(OPCPackage pkg, MarkdownBlockWriter out) throws IOException {
+		Objects.requireNonNull(pkg, "pkg");
+		PackageRelationshipCollection rels = pkg.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+		if (rels.isEmpty()) {
+			throw new IOException("Not a WordprocessingML package: no main document part");
+		}
+		this.documentPart = pkg.getPart(rels.getRelationship(0));
+		this.out = Objects.requireNonNull(out, "out");
+		this.xmlInputFactory = XMLInputFactory.newFactory();
+		xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	void write() throws IOException {
+		try {
+			readStyles();
+			readNumbering();
+			try (InputStream in = documentPart.getInputStream()) {
+				XMLStreamReader r = xmlInputFactory.createXMLStreamReader(in);
+				try {
+					readBody(r);
+				} finally {
+					r.close();
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Malformed " + documentPart.getPartName(), e);
+		}
+		out.finish();
+	}
+
+	private void readBody(XMLStreamReader r) throws XMLStreamException, IOException {
+		while (r.hasNext()) {
+			if (r.next() != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			if (isW(r, "p")) {
+				writeParagraph(readParagraph(r, false));
+			} else if (isW(r, "tbl")) {
+				writeTable(readTable(r));
+			} else if (isW(r, "sectPr")) {
+				skipElement(r);
+			}
+			// Anything else (body, sdt, customXml...) is a container: descend into it
+		}
+	}
+
+	private void writeParagraph(Paragraph p) throws IOException {
+		if (!p.text.isEmpty()) {
+			int headingLevel = p.styleId != null
+				? headingLevelByStyle.computeIfAbsent(p.styleId, id -> MarkdownBlockWriter.headingLevel(null, id))
+				: 0;
+			if (headingLevel > 0) {
+				out.heading(headingLevel, p.text);
+			} else if (p.numId != null && !"0".equals(p.numId)) {
+				Map<Integer, String> formats = numFmtByNumId.get(p.numId);
+				String numFmt = formats != null ? formats.get(p.ilvl) : null;
+				out.listItem(p.ilvl, MarkdownBlockWriter.isBulletFormat(numFmt), p.text);
+			} else {
+				out.paragraph(p.text);
+			}
+		}
+		for (Image image : p.images) {
+			PackagePart part = imagePart(image.relId);
+			if (part != null) {
+				out.image(part, image.widthPt, image.heightPt);
+			}
+		}
+	}
+
+	/** Reads one {@code w:p}; the reader is left on its end tag. */
+	private Paragraph readParagraph(XMLStreamReader r, boolean html) throws XMLStreamException {
+		Paragraph p = new Paragraph();
+		MarkdownBlockWriter.InlineText inline = new MarkdownBlockWriter.InlineText(html);
+		StringBuilder runText = new StringBuilder();
+		boolean bold = false;
+		boolean italic = false;
+		String link = null;
+		int linkDepth = -1;
+		String blipRelId = null;
+		long cx = 0;
+		long cy = 0;
+
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String ns = r.getNamespaceURI();
+				String name = r.getLocalName();
+				if (W.equals(ns) && "t".equals(name)) {
+					runText.append(r.getElementText());
+					continue;
+				}
+				if (W.equals(ns) && "pPr".equals(name)) {
+					readParagraphProperties(r, p);
+					continue;
+				}
+				if (W.equals(ns) && ("delText".equals(name) || "instrText".equals(name) || "pict".equals(name) || "txbxContent".equals(name))
+					|| MC.equals(ns) && "Fallback".equals(name)) {
+					skipElement(r);
+					continue;
+				}
+				depth++;
+				if (W.equals(ns)) {
+					switch (name) {
+						case "r":
+							runText.setLength(0);
+							bold = false;
+							italic = false;
+							break;
+						case "b":
+							bold = isOn(r);
+							break;
+						case "i":
+							italic = isOn(r);
+							break;
+						case "tab":
+							runText.append('\t');
+							break;
+						case "br":
+						case "cr":
+							runText.append('\n');
+							break;
+						case "hyperlink":
+							link = hyperlinkTarget(r.getAttributeValue(R, "id"));
+							linkDepth = depth;
+							break;
+						case "drawing":
+							blipRelId = null;
+							cx = 0;
+							cy = 0;
+							break;
+						default:
+							break;
+					}
+				} else if (A.equals(ns) && "blip".equals(name)) {
+					blipRelId = r.getAttributeValue(R, "embed");
+				} else if (A.equals(ns) && "ext".equals(name) || WP.equals(ns) && "extent".equals(name)) {
+					String cxAttr = r.getAttributeValue(null, "cx");
+					String cyAttr = r.getAttributeValue(null, "cy");
+					// The picture's own a:ext (read after wp:extent) wins, as in XWPFPicture; a malformed one keeps the extent
+					if (cxAttr != null && cyAttr != null) {
+						cx = parseLong(cxAttr, cx);
+						cy = parseLong(cyAttr, cy);
+					}
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth == linkDepth) {
+					link = null;
+					linkDepth = -1;
+				}
+				depth--;
+				if (W.equals(r.getNamespaceURI())) {
+					if ("r".equals(r.getLocalName())) {
+						inline.add(runText.toString(), bold, italic, link);
+						runText.setLength(0);
+					} else if ("drawing".equals(r.getLocalName()) && blipRelId != null) {
+						p.images.add(new Image(blipRelId, Units.toPoints(cx), Units.toPoints(cy)));
+					}
+				}
+			}
+		}
+		p.text = inline.finish();
+		return p;
+	}
+
+	private void readParagraphProperties(XMLStreamReader r, Paragraph p) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				if (!W.equals(r.getNamespaceURI())) continue;
+				switch (r.getLocalName()) {
+					case "pStyle":
+						p.styleId = r.getAttributeValue(W, "val");
+						break;
+					case "numId":
+						p.numId = r.getAttributeValue(W, "val");
+						break;
+					case "ilvl":
+						p.ilvl = parseInt(r.getAttributeValue(W, "val"), 0);
+						break;
+					case "rPr":
+						// Paragraph mark formatting, not text
+						skipElement(r);
+						depth--;
+						break;
+					default:
+						break;
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/** Reads one {@code w:tbl}, including nested tables; the reader is left on its end tag. */
+	private Table readTable(XMLStreamReader r) throws XMLStreamException {
+		Table table = new Table();
+		List<Cell> row = null;
+		Cell cell = null;
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (!W.equals(r.getNamespaceURI())) {
+					depth++;
+					continue;
+				}
+				String name = r.getLocalName();
+				if (cell != null && "p".equals(name)) {
+					cell.content.add(readParagraph(r, true));
+					continue;
+				}
+				if (cell != null && "tbl".equals(name)) {
+					cell.content.add(readTable(r));
+					continue;
+				}
+				depth++;
+				switch (name) {
+					case "gridCol":
+						table.colWidthsPx.add(twipsToPx(r.getAttributeValue(W, "w")));
+						break;
+					case "tr":
+						row = new ArrayList<>();
+						table.rows.add(row);
+						break;
+					case "tc":
+						cell = new Cell();
+						if (row != null) row.add(cell);
+						break;
+					case "gridSpan":
+						if (cell != null) cell.gridSpan = Math.max(parseInt(r.getAttributeValue(W, "val"), 1), 1);
+						break;
+					case "vMerge":
+						if (cell != null) {
+							cell.vMerge = true;
+							cell.vMergeRestart = "restart".equals(r.getAttributeValue(W, "val"));
+						}
+						break;
+					default:
+						break;
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+				if (W.equals(r.getNamespaceURI()) && "tc".equals(r.getLocalName())) {
+					cell = null;
+				}
+			}
+		}
+		return table;
+	}
+
+	private void writeTable(Table table) throws IOException {
+		out.startTable(table.colWidthsPx);
+		for (int r = 0; r < table.rows.size(); r++) {
+			out.startRow();
+			int gridCol = 0;
+			for (Cell cell : table.rows.get(r)) {
+				if (cell.vMerge && !cell.vMergeRestart) {
+					// Covered by the rowspan of the cell that started the merge
+					gridCol += cell.gridSpan;
+					continue;
+				}
+				out.startCell(cell.gridSpan, cell.vMerge ? table.rowSpan(r, gridCol) : 1);
+				for (Object content : cell.content) {
+					if (content instanceof Paragraph) {
+						Paragraph p = (Paragraph) content;
+						out.startCellParagraph();
+						out.write(p.text);
+						for (Image image : p.images) {
+							PackagePart part = imagePart(image.relId);
+							if (part != null) {
+								out.imageTag(part, image.widthPt, image.heightPt);
+							}
+						}
+						out.endCellParagraph();
+					} else {
+						writeTable((Table) content);
+					}
+				}
+				out.endCell();
+				gridCol += cell.gridSpan;
+			}
+			out.endRow();
+		}
+		out.endTable();
+	}
+
+	private void readStyles() throws XMLStreamException, IOException {
+		PackagePart stylesPart = relatedPart(XWPFRelation.STYLES.getRelation());
+		if (stylesPart == null) {
+			return;
+		}
+		try (InputStream in = stylesPart.getInputStream()) {
+			XMLStreamReader r = xmlInputFactory.createXMLStreamReader(in);
+			String styleId = null;
+			while (r.hasNext()) {
+				if (r.next() != XMLStreamConstants.START_ELEMENT || !W.equals(r.getNamespaceURI())) {
+					continue;
+				}
+				if ("style".equals(r.getLocalName())) {
+					styleId = r.getAttributeValue(W, "styleId");
+					if (styleId != null) {
+						headingLevelByStyle.put(styleId, MarkdownBlockWriter.headingLevel(null, styleId));
+					}
+				} else if ("name".equals(r.getLocalName()) && styleId != null) {
+					headingLevelByStyle.put(styleId, MarkdownBlockWriter.headingLevel(r.getAttributeValue(W, "val"), styleId));
+				}
+			}
+			r.close();
+		}
+	}
+
+	private void readNumbering() throws XMLStreamException, IOException {
+		PackagePart numberingPart = relatedPart(XWPFRelation.NUMBERING.getRelation());
+		if (numberingPart == null) {
+			return;
+		}
+		Map<String, Map<Integer, String>> formatsByAbstractId = new HashMap<>();
+		Map<String, String> abstractIdByNumId = new HashMap<>();
+		try (InputStream in = numberingPart.getInputStream()) {
+			XMLStreamReader r = xmlInputFactory.createXMLStreamReader(in);
+			Map<Integer, String> formats = null;
+			int ilvl = 0;
+			String numId = null;
+			while (r.hasNext()) {
+				if (r.next() != XMLStreamConstants.START_ELEMENT || !W.equals(r.getNamespaceURI())) {
+					continue;
+				}
+				switch (r.getLocalName()) {
+					case "abstractNum":
+						formats = formatsByAbstractId.computeIfAbsent(r.getAttributeValue(W, "abstractNumId"), id -> new HashMap<>());
+						numId = null;
+						break;
+					case "lvl":
+						ilvl = parseInt(r.getAttributeValue(W, "ilvl"), 0);
+						break;
+					case "numFmt":
+						if (formats != null && numId == null) formats.put(ilvl, r.getAttributeValue(W, "val"));
+						break;
+					case "num":
+						numId = r.getAttributeValue(W, "numId");
+						formats = null;
+						break;
+					case "abstractNumId":
+						if (numId != null) abstractIdByNumId.put(numId, r.getAttributeValue(W, "val"));
+						break;
+					default:
+						break;
+				}
+			}
+			r.close();
+		}
+		for (Map.Entry<String, String> e : abstractIdByNumId.entrySet()) {
+			Map<Integer, String> formats = formatsByAbstractId.get(e.getValue());
+			if (formats != null) {
+				numFmtByNumId.put(e.getKey(), formats);
+			}
+		}
+	}
+
+	private PackagePart relatedPart(String relationshipType) throws IOException {
+		try {
+			PackageRelationshipCollection rels = documentPart.getRelationshipsByType(relationshipType);
+			return rels.isEmpty() ? null : documentPart.getRelatedPart(rels.getRelationship(0));
+		} catch (InvalidFormatException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private PackagePart imagePart(String relId) throws IOException {
+		try {
+			PackageRelationship rel = documentPart.getRelationship(relId);
+			if (rel == null || rel.getTargetMode() == TargetMode.EXTERNAL) {
+				return null;
+			}
+			return documentPart.getRelatedPart(rel);
+		} catch (InvalidFormatException | POIXMLException e) {
+			throw new IOException("Unresolvable image relationship " + relId, e);
+		}
+	}
+
+	private String hyperlinkTarget(String relId) {
+		if (relId == null) {
+			return null;
+		}
+		PackageRelationship rel = documentPart.getRelationship(relId);
+		String url = rel != null ? rel.getTargetURI().toString() : null;
+		return url != null && !url.isEmpty() ? url : null;
+	}
+
+	private static boolean isW(XMLStreamReader r, String localName) {
+		return W.equals(r.getNamespaceURI()) && localName.equals(r.getLocalName());
+	}
+
+	private static boolean isOn(XMLStreamReader r) {
+		String val = r.getAttributeValue(W, "val");
+		return val == null || "true".equals(val) || "1".equals(val) || "on".equals(val);
+	}
+
+	/** Skips the current element and its children; the reader is left on its end tag. */
+	private static void skipElement(XMLStreamReader r) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+		}
+	}
+
+	private static int parseInt(String value, int fallback) {
+		if (value == null) return fallback;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return fallback;
+		}
+	}
+
+	private static long parseLong(String value, long fallback) {
+		if (value == null) return fallback;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return fallback;
+		}
+	}
+
+	/** {@code null}, as for XWPF's unreadable grid widths, when absent or not a whole number of twips. */
+	private static Integer twipsToPx(String twips) {
+		long value = parseLong(twips, Long.MIN_VALUE);
+		return value != Long.MIN_VALUE ? DocxToHtmlApp.twipsToPx(value) : null;
+	}
+
+	private static class Paragraph {
+		String styleId;
+		String numId;
+		int ilvl;
+		String text;
+		final List<Image> images = new ArrayList<>();
+	}
+
+	private static class Image {
+		final String relId;
+		final double widthPt;
+		final double heightPt;
+
+		Image(String relId, double widthPt, double heightPt) {
+			this.relId = relId;
+			this.widthPt = widthPt;
+			this.heightPt = heightPt;
+		}
+	}
+
+	private static class Cell {
+		int gridSpan = 1;
+		boolean vMerge;
+		boolean vMergeRestart;
+		/** {@link Paragraph}s and nested {@link Table}s in document order. */
+		final List<Object> content = new ArrayList<>();
+	}
+
+	private static class Table {
+		final List<Integer> colWidthsPx = new ArrayList<>();
+		final List<List<Cell>> rows = new ArrayList<>();
+
+		int rowSpan(int startRow, int gridCol) {
+			int span = 1;
+			for (int r = startRow + 1; r < rows.size(); r++) {
+				Cell below = cellAtGridCol(rows.get(r), gridCol);
+				if (below == null || !below.vMerge || below.vMergeRestart) {
+					break;
+				}
+				span++;
+			}
+			return span;
+		}
+
+		private static Cell cellAtGridCol(List<Cell> row, int gridCol) {
+			int col = 0;
+			for (Cell cell : row) {
+				if (col == gridCol) return cell;
+				col += cell.gridSpan;
+				if (col > gridCol) return null;
+			}
+			return null;
+		}
+	}
+}
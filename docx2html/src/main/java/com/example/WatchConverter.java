@@ -0,0 +1,325 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps an output tree in step with an input tree. {@link #sync()} walks the
+ * input once and converts only files whose size and modification time, and then
+ * content hash, differ from the persisted {@link ConversionManifest}.
+ * {@link #watch} then waits on a {@link WatchService} and looks only at the paths
+ * it reports, so a quiet corpus costs nothing however large it is. Bursts of
+ * writes (Word saves a file in several steps) are debounced into one round, and
+ * outputs whose source was deleted are removed. A file that cannot be read yet
+ * (locked mid-save, or gone between the event and the look) fails only itself
+ * and is looked at again after a back-off. Not safe for concurrent use.
+ */
+public class WatchConverter {
+
+	/** Manifest file name inside the output directory. */
+	public static final String MANIFEST_NAME = ".convert-manifest";
+
+	public static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+	/** First wait before paths that failed with an I/O error are looked at again; doubles while they keep failing. */
+	static final long RETRY_MIN_MILLIS = 1_000;
+	static final long RETRY_MAX_MILLIS = 5 * 60_000;
+
+	/** What one round converted and removed. */
+	public static final class Round {
+
+		private final BatchReport report;
+		private final List<Path> removed;
+
+		Round(BatchReport report, List<Path> removed) {
+			this.report = report;
+			this.removed = Collections.unmodifiableList(removed);
+		}
+
+		public BatchReport getReport() {
+			return report;
+		}
+
+		/** Outputs deleted because their source is gone. */
+		public List<Path> getRemoved() {
+			return removed;
+		}
+
+		public boolean isEmpty() {
+			return report.getResults().isEmpty() && removed.isEmpty();
+		}
+	}
+
+	private final BatchConverter batch;
+	private final Path inputRoot;
+	private final Path outputRoot;
+	private final long debounceMillis;
+	private final ConversionManifest manifest;
+	/** Paths whose last round failed on the file system, added to the next round. */
+	private final Set<Path> retry = new LinkedHashSet<>();
+
+	/** The manifest lives at {@code outputDir/}{@link #MANIFEST_NAME}; it is created on the first round. */
+	public WatchConverter(DocumentConverter docxToMarkdown, DocumentConverter markdownToDocx, int threads,
+						  Path inputDir, Path outputDir, long debounceMillis) throws IOException {
+		this(docxToMarkdown, markdownToDocx, threads, null, inputDir, outputDir, debounceMillis);
+	}
+
+	/** As above, with every round's jobs ordered by {@code scheduler} (may be {@code null}); see {@link BatchConverter}. */
+	public WatchConverter(DocumentConverter docxToMarkdown, DocumentConverter markdownToDocx, int threads,
+						  ConversionScheduler scheduler, Path inputDir, Path outputDir, long debounceMillis) throws IOException {
+		this.batch = new BatchConverter(docxToMarkdown, markdownToDocx, threads, scheduler);
+		this.inputRoot = Objects.requireNonNull(inputDir, "inputDir").toAbsolutePath().normalize();
+		this.outputRoot = Objects.requireNonNull(outputDir, "outputDir").toAbsolutePath().normalize();
+		if (inputRoot.startsWith(outputRoot)) {
+			throw new IllegalArgumentException("Output directory must not contain the input directory: " + outputRoot);
+		}
+		if (debounceMillis < 0) {
+			throw new IllegalArgumentException("debounceMillis must not be negative: " + debounceMillis);
+		}
+		this.debounceMillis = debounceMillis;
+		// Other settings or another build mean other outputs, so the manifest is only trusted with the
+		// same converters; converters that cannot name their settings never trust it
+		String docxKey = docxToMarkdown.cacheKey(null);
+		String markdownKey = markdownToDocx.cacheKey(null);
+		this.manifest = ConversionManifest.load(outputRoot.resolve(MANIFEST_NAME), docxKey != null && markdownKey != null
+			? ConversionCache.CODE_VERSION + "\n" + docxKey + "\n" + markdownKey
+			: "unnamed-" + UUID.randomUUID());
+	}
+
+	/** Compares the whole input tree with the manifest; the only step whose cost grows with the corpus. */
+	public Round sync() throws IOException, InterruptedException {
+		List<Path> inputs = BatchConverter.scanDirectory(inputRoot, outputRoot).stream()
+			.map(BatchConverter.Job::getInput)
+			.collect(Collectors.toList());
+		Set<String> present = new HashSet<>();
+		for (Path input : inputs) {
+			present.add(relative(inputRoot, input));
+		}
+		List<Path> gone = new ArrayList<>();
+		for (String input : manifest.inputs()) {
+			if (!present.contains(input)) {
+				gone.add(inputRoot.resolve(input));
+			}
+		}
+		inputs.addAll(gone);
+		return sync(inputs);
+	}
+
+	/**
+	 * Converts those of {@code paths} that are new or changed and removes the
+	 * outputs of those that no longer exist. A path that is gone may have been a
+	 * directory; everything recorded below it is removed too. A path that fails
+	 * with an I/O error is reported as a failed result and kept for the next round;
+	 * only the manifest failing to save throws.
+	 */
+	public Round sync(Collection<Path> paths) throws IOException, InterruptedException {
+		Set<Path> todo = new LinkedHashSet<>(retry);
+		todo.addAll(paths);
+		retry.clear();
+		List<BatchConverter.Job> jobs = new ArrayList<>();
+		Map<Path, ConversionManifest.Entry> pending = new HashMap<>();
+		List<BatchReport.Result> unreadable = new ArrayList<>();
+		List<Path> removed = new ArrayList<>();
+		for (Path path : todo) {
+			Path input = path.toAbsolutePath().normalize();
+			if (!input.startsWith(inputRoot) || input.startsWith(outputRoot)) {
+				continue;
+			}
+			try {
+				if (Files.isRegularFile(input)) {
+					if (BatchConverter.isConvertible(input)) {
+						ConversionManifest.Entry entry = staleEntry(input);
+						if (entry != null) {
+							jobs.add(new BatchConverter.Job(input, outputRoot.resolve(entry.output)));
+							pending.put(input, entry);
+						}
+					}
+				} else if (Files.notExists(input, LinkOption.NOFOLLOW_LINKS)) {
+					for (String gone : manifest.inputsUnder(relative(inputRoot, input))) {
+						ConversionManifest.Entry entry = manifest.remove(gone);
+						Path output = outputRoot.resolve(entry.output);
+						if (Files.deleteIfExists(output)) {
+							removed.add(output);
+						}
+					}
+				}
+			} catch (IOException e) {
+				// Locked, or gone since the event; the next round sees how it ended up
+				retry.add(input);
+				unreadable.add(new BatchReport.Result(new BatchConverter.Job(input, outputRoot), -1, 0, e));
+			}
+		}
+
+		BatchReport report = batch.convert(jobs);
+		for (BatchReport.Result result : report.getResults()) {
+			Path input = result.getJob().getInput();
+			if (result.isSuccess()) {
+				manifest.put(relative(inputRoot, input), pending.get(input));
+			} else {
+				// The failed output was deleted; retry on the next change or restart
+				manifest.remove(relative(inputRoot, input));
+				if (result.getError() instanceof FileSystemException) {
+					// Not the document's fault, so not worth waiting for a change
+					retry.add(input);
+				}
+			}
+		}
+		unreadable.forEach(report::addRejected);
+		manifest.save();
+		return new Round(report, removed);
+	}
+
+	/**
+	 * Runs {@link #sync()}, then converts changes as they happen until the thread
+	 * is interrupted. Every round, including empty ones, goes to {@code onRound}.
+	 * I/O errors during a round never end the loop: a failing path is retried on
+	 * its own, and a round that fails as a whole (a directory vanishing mid-walk,
+	 * the manifest not saving) is reported as one failed result and followed by a
+	 * full sync. Every full sync after the first registers the tree again, so
+	 * directories created while events were lost are watched from then on. Only
+	 * failing to watch {@code inputDir} at the start throws.
+	 */
+	public void watch(Consumer<Round> onRound) throws IOException, InterruptedException {
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			Map<WatchKey, Path> dirs = new HashMap<>();
+			// Registered first, so nothing written during the initial sync is missed
+			register(watcher, dirs, inputRoot);
+
+			boolean rescan = true;
+			boolean started = false;
+			long retryMillis = RETRY_MIN_MILLIS;
+			Set<Path> changed = new LinkedHashSet<>();
+			while (true) {
+				Round round;
+				try {
+					if (rescan && started) {
+						// Directories whose creation was lost have no key yet; known ones keep theirs
+						register(watcher, dirs, inputRoot);
+					}
+					round = rescan ? sync() : sync(changed);
+					rescan = false;
+				} catch (IOException | UncheckedIOException e) {
+					round = failedRound(e);
+					rescan = true;
+				}
+				changed.clear();
+				started = true;
+				onRound.accept(round);
+
+				// With failures outstanding, wake up for them even if the tree stays quiet
+				boolean again = rescan || !retry.isEmpty();
+				WatchKey key = again ? watcher.poll(retryMillis, TimeUnit.MILLISECONDS) : watcher.take();
+				retryMillis = again ? Math.min(retryMillis * 2, RETRY_MAX_MILLIS) : RETRY_MIN_MILLIS;
+				// Debounce: collect until the tree has been quiet for debounceMillis
+				while (key != null) {
+					rescan |= drain(watcher, dirs, key, changed);
+					key = watcher.poll(debounceMillis, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+	}
+
+	/** A round that failed before it got to any file, as one failed result for the whole input tree. */
+	private Round failedRound(Exception e) {
+		BatchReport report = new BatchReport(0);
+		report.addRejected(new BatchReport.Result(new BatchConverter.Job(inputRoot, outputRoot), -1, 0, e));
+		report.finish();
+		return new Round(report, Collections.emptyList());
+	}
+
+	/** Adds the paths behind {@code key} to {@code changed}; true when events were lost and a full sync is due. */
+	private boolean drain(WatchService watcher, Map<WatchKey, Path> dirs, WatchKey key, Set<Path> changed) {
+		Path dir = dirs.get(key);
+		boolean lost = dir == null;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+				lost = true;
+				continue;
+			}
+			Path path = dir.resolve((Path) event.context());
+			changed.add(path);
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				// Files moved in with a directory raise no events of their own
+				try (Stream<Path> files = Files.walk(path)) {
+					register(watcher, dirs, path);
+					files.filter(Files::isRegularFile).forEach(changed::add);
+				} catch (IOException | UncheckedIOException e) {
+					lost = true;
+				}
+			}
+		}
+		if (!key.reset()) {
+			dirs.remove(key);
+		}
+		return lost;
+	}
+
+	/** WatchService is not recursive, so every directory below {@code dir} gets its own key. */
+	private void register(WatchService watcher, Map<WatchKey, Path> dirs, Path dir) throws IOException {
+		try (Stream<Path> tree = Files.walk(dir)) {
+			for (Path d : (Iterable<Path>) tree.filter(p -> Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS))::iterator) {
+				if (!d.startsWith(outputRoot)) {
+					dirs.put(d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), d);
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * The manifest entry to record once {@code input} is converted, or {@code null}
+	 * when its output is up to date. Only files whose size or time changed are
+	 * hashed; a touched but unchanged file just gets its new time recorded.
+	 */
+	private ConversionManifest.Entry staleEntry(Path input) throws IOException {
+		String key = relative(inputRoot, input);
+		ConversionManifest.Entry known = manifest.get(key);
+		BasicFileAttributes attrs = Files.readAttributes(input, BasicFileAttributes.class);
+		long modified = attrs.lastModifiedTime().toMillis();
+		String output = relative(outputRoot, outputRoot.resolve(BatchConverter.outputName(inputRoot.relativize(input))));
+		boolean outputExists = Files.exists(outputRoot.resolve(output));
+		if (known != null && outputExists && known.output.equals(output)
+			&& known.modifiedMillis == modified && known.size == attrs.size()) {
+			return null;
+		}
+		String sha256 = ConversionManifest.sha256(input);
+		ConversionManifest.Entry entry = new ConversionManifest.Entry(modified, attrs.size(), sha256, output);
+		if (known != null && outputExists && known.output.equals(output) && known.sha256.equals(sha256)) {
+			manifest.put(key, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	private static String relative(Path root, Path path) {
+		return root.relativize(path).toString().replace(File.separatorChar, '/');
+	}
+}
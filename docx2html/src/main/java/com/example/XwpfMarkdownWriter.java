@@ -0,0 +1,199 @@
+package com.example;
+
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFHyperlink;
+import org.apache.poi.xwpf.usermodel.XWPFHyperlinkRun;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFPicture;
+import org.apache.poi.xwpf.usermodel.XWPFPictureData;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFStyle;
+import org.apache.poi.xwpf.usermodel.XWPFStyles;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.xmlbeans.impl.values.XmlValueOutOfRangeException;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTcPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTVMerge;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STMerge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Writes Markdown straight from the XWPF object model, block by block, without
+ * going through XHTMLConverter, jsoup and html2md. Tables and images are written
+ * as raw HTML blocks styled like the ones {@link DocxToHtmlApp} produces.
+ */
+class XwpfMarkdownWriter {
+
+	private final XWPFDocument document;
+	private final MarkdownBlockWriter out;
+	private final Map<String, Integer> headingLevelByStyle = new HashMap<>();
+
+	XwpfMarkdownWriter(XWPFDocument document, MarkdownBlockWriter out) {
+		this.document = Objects.requireNonNull(document, "document");
+		this.out = Objects.requireNonNull(out, "out");
+	}
+
+	void write() throws IOException {
+		for (IBodyElement element : document.getBodyElements()) {
+			if (element instanceof XWPFParagraph) {
+				writeParagraph((XWPFParagraph) element);
+			} else if (element instanceof XWPFTable) {
+				writeTable((XWPFTable) element);
+			}
+		}
+		out.finish();
+	}
+
+	private void writeParagraph(XWPFParagraph p) throws IOException {
+		List<XWPFPicture> pictures = new ArrayList<>();
+		String text = inlineText(p, pictures, false);
+
+		if (!text.isEmpty()) {
+			int headingLevel = headingLevel(p);
+			if (headingLevel > 0) {
+				out.heading(headingLevel, text);
+			} else if (p.getNumID() != null && p.getNumID().signum() > 0) {
+				int level = p.getNumIlvl() != null ? p.getNumIlvl().intValue() : 0;
+				out.listItem(level, MarkdownBlockWriter.isBulletFormat(numFmt(p)), text);
+			} else {
+				out.paragraph(text);
+			}
+		}
+
+		for (XWPFPicture picture : pictures) {
+			XWPFPictureData data = picture.getPictureData();
+			if (data != null) {
+				out.image(data.getPackagePart(), picture.getWidth(), picture.getDepth());
+			}
+		}
+	}
+
+	private static String numFmt(XWPFParagraph p) {
+		try {
+			return p.getNumFmt();
+		} catch (XmlValueOutOfRangeException e) {
+			// Malformed numbering part; fall back to a bullet
+			return null;
+		}
+	}
+
+	private String inlineText(XWPFParagraph p, List<XWPFPicture> pictures, boolean html) {
+		MarkdownBlockWriter.InlineText inline = new MarkdownBlockWriter.InlineText(html);
+		for (XWPFRun run : p.getRuns()) {
+			pictures.addAll(run.getEmbeddedPictures());
+			inline.add(run.text(), run.isBold(), run.isItalic(), linkOf(run));
+		}
+		return inline.finish();
+	}
+
+	private String linkOf(XWPFRun run) {
+		if (!(run instanceof XWPFHyperlinkRun)) {
+			return null;
+		}
+		XWPFHyperlink hyperlink = ((XWPFHyperlinkRun) run).getHyperlink(document);
+		return hyperlink != null && hyperlink.getURL() != null && !hyperlink.getURL().isEmpty() ? hyperlink.getURL() : null;
+	}
+
+	private void writeTable(XWPFTable table) throws IOException {
+		out.startTable(DocxToHtmlApp.extractColumnWidthsPx(table));
+		List<XWPFTableRow> rows = table.getRows();
+		for (int r = 0; r < rows.size(); r++) {
+			out.startRow();
+			int gridCol = 0;
+			for (XWPFTableCell cell : rows.get(r).getTableCells()) {
+				int colSpan = gridSpan(cell);
+				CTVMerge vMerge = vMerge(cell);
+				if (vMerge != null && !isRestart(vMerge)) {
+					// Covered by the rowspan of the cell that started the merge
+					gridCol += colSpan;
+					continue;
+				}
+				out.startCell(colSpan, vMerge != null ? rowSpan(rows, r, gridCol) : 1);
+				writeCellContent(cell);
+				out.endCell();
+				gridCol += colSpan;
+			}
+			out.endRow();
+		}
+		out.endTable();
+	}
+
+	private void writeCellContent(XWPFTableCell cell) throws IOException {
+		for (IBodyElement element : cell.getBodyElements()) {
+			if (element instanceof XWPFParagraph) {
+				List<XWPFPicture> pictures = new ArrayList<>();
+				out.startCellParagraph();
+				out.write(inlineText((XWPFParagraph) element, pictures, true));
+				for (XWPFPicture picture : pictures) {
+					XWPFPictureData data = picture.getPictureData();
+					if (data != null) {
+						out.imageTag(data.getPackagePart(), picture.getWidth(), picture.getDepth());
+					}
+				}
+				out.endCellParagraph();
+			} else if (element instanceof XWPFTable) {
+				writeTable((XWPFTable) element);
+			}
+		}
+	}
+
+	private static int gridSpan(XWPFTableCell cell) {
+		CTTcPr tcPr = cell.getCTTc().getTcPr();
+		if (tcPr == null || tcPr.getGridSpan() == null || tcPr.getGridSpan().getVal() == null) {
+			return 1;
+		}
+		return Math.max(tcPr.getGridSpan().getVal().intValue(), 1);
+	}
+
+	private static CTVMerge vMerge(XWPFTableCell cell) {
+		CTTcPr tcPr = cell.getCTTc().getTcPr();
+		return tcPr != null ? tcPr.getVMerge() : null;
+	}
+
+	private static boolean isRestart(CTVMerge vMerge) {
+		return vMerge.isSetVal() && vMerge.getVal() == STMerge.RESTART;
+	}
+
+	private static int rowSpan(List<XWPFTableRow> rows, int startRow, int gridCol) {
+		int span = 1;
+		for (int r = startRow + 1; r < rows.size(); r++) {
+			XWPFTableCell below = cellAtGridCol(rows.get(r), gridCol);
+			CTVMerge vMerge = below != null ? vMerge(below) : null;
+			if (vMerge == null || isRestart(vMerge)) {
+				break;
+			}
+			span++;
+		}
+		return span;
+	}
+
+	private static XWPFTableCell cellAtGridCol(XWPFTableRow row, int gridCol) {
+		int col = 0;
+		for (XWPFTableCell cell : row.getTableCells()) {
+			if (col == gridCol) return cell;
+			col += gridSpan(cell);
+			if (col > gridCol) return null;
+		}
+		return null;
+	}
+
+	private int headingLevel(XWPFParagraph p) {
+		String styleId = p.getStyleID();
+		if (styleId == null || styleId.isEmpty()) {
+			return 0;
+		}
+		return headingLevelByStyle.computeIfAbsent(styleId, id -> {
+			XWPFStyles styles = document.getStyles();
+			XWPFStyle style = styles != null ? styles.getStyle(id) : null;
+			return MarkdownBlockWriter.headingLevel(style != null ? style.getName() : null, id);
+		});
+	}
+}
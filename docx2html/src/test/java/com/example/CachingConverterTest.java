@@ -0,0 +1,98 @@
+package com.example;
+
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingConverterTest {
+
+	@Test
+	void keysPassesBySettingsNotClass() {
+		assertEquals(converter(new Append("a")).cacheKey(null), converter(new Append("a")).cacheKey(null));
+		assertNotEquals(converter(new Append("a")).cacheKey(null), converter(new Append("b")).cacheKey(null));
+	}
+
+	@Test
+	void doesNotCachePassesWithoutAKey() throws IOException {
+		String text = "a";
+		DocumentConverter lambda = converter((html, context) -> html.body().appendText(text));
+		assertNull(lambda.cacheKey(null));
+
+		ConversionCache cache = new ConversionCache(1024 * 1024, null);
+		CachingConverter caching = new CachingConverter(lambda, cache);
+		byte[] docx = docx();
+		caching.convert(new ByteArrayInputStream(docx), new ByteArrayOutputStream());
+		caching.convert(new ByteArrayInputStream(docx), new ByteArrayOutputStream());
+		assertEquals(0, cache.getMisses() + cache.getMemoryHits());
+	}
+
+	@Test
+	void hashesFilesAsTheyStream(@TempDir Path dir) throws IOException {
+		byte[] docx = docx();
+		Path input = Files.write(dir.resolve("in.docx"), docx);
+		assertEquals(ConversionCache.key("k", docx), ConversionCache.key("k", input));
+	}
+
+	@Test
+	void keepsOutputsLargerThanMemoryOnDiskOnly(@TempDir Path dir) throws IOException {
+		Path input = Files.write(dir.resolve("in.docx"), docx());
+		// Every output is larger than the memory tier
+		ConversionCache cache = new ConversionCache(1, dir.resolve("cache"));
+		CachingConverter caching = new CachingConverter(new DocxToMarkdownConverter(DocxToMarkdownOptions.create()), cache);
+
+		caching.convert(input, dir.resolve("first.md"));
+		caching.convert(input, dir.resolve("second.md"));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getDiskHits());
+		assertEquals(0, cache.getMemoryBytes());
+		assertArrayEquals(Files.readAllBytes(dir.resolve("first.md")), Files.readAllBytes(dir.resolve("second.md")));
+	}
+
+	@Test
+	void keysResultsByTheBuild() {
+		assertTrue(ConversionCache.CODE_VERSION.matches("[0-9a-f]{64}"), ConversionCache.CODE_VERSION);
+	}
+
+	private static DocumentConverter converter(HtmlPass pass) {
+		return new DocxToMarkdownConverter(DocxToMarkdownOptions.create().pipeline(new HtmlPipeline().add(pass)));
+	}
+
+	private static byte[] docx() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new MarkdownToDocxConverter(MarkdownToDocxOptions.create())
+			.convert(new ByteArrayInputStream("# Title\n\nText.\n".getBytes(StandardCharsets.UTF_8)), out);
+		return out.toByteArray();
+	}
+
+	private static final class Append implements HtmlPass {
+
+		private final String text;
+
+		Append(String text) {
+			this.text = text;
+		}
+
+		@Override
+		public void apply(Document html, HtmlPassContext context) {
+			html.body().appendText(text);
+		}
+
+		@Override
+		public String cacheKey() {
+			return "append:" + text;
+		}
+	}
+}
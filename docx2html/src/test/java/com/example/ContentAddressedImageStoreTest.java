@@ -0,0 +1,48 @@
+package com.example;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContentAddressedImageStoreTest {
+
+	@Test
+	void writesARepeatedPictureOnce(@TempDir Path dir) throws Exception {
+		Path assets = dir.resolve("assets");
+		try (OPCPackage pkg = OPCPackage.create(new ByteArrayOutputStream())) {
+			PackagePart logo = part(pkg, "/word/media/logo.png");
+			PackagePart copy = part(pkg, "/word/media/copy.png");
+
+			String src = new ContentAddressedImageStore(assets, dir, PictureSource.PARTS).src(logo);
+			Path stored = dir.resolve(src);
+			FileTime written = FileTime.fromMillis(0);
+			Files.setLastModifiedTime(stored, written);
+
+			// Another document referencing the same bytes finds the file and leaves it alone
+			assertEquals(src, new ContentAddressedImageStore(assets, dir, PictureSource.PARTS).src(copy));
+			assertEquals(written, Files.getLastModifiedTime(stored));
+			try (Stream<Path> files = Files.list(assets)) {
+				assertEquals(1, files.count());
+			}
+		}
+	}
+
+	private static PackagePart part(OPCPackage pkg, String name) throws Exception {
+		PackagePart part = pkg.createPart(PackagingURIHelper.createPartName(name), "image/png");
+		try (OutputStream out = part.getOutputStream()) {
+			out.write(new byte[] {1, 2, 3, 4});
+		}
+		return part;
+	}
+}
@@ -0,0 +1,233 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionSchedulerTest {
+
+	private final ConversionScheduler scheduler = new ConversionScheduler(64L * 1024 * 1024, 0);
+
+	@Test
+	void estimatesPartsFromTheCentralDirectory() throws IOException {
+		byte[] docx = docx(null);
+		long expected = ConversionScheduler.BASE_COST
+			+ 3000L * ConversionScheduler.XML_FACTOR
+			+ 200L * ConversionScheduler.XML_FACTOR
+			+ 5000L * ConversionScheduler.MEDIA_FACTOR;
+		assertEquals(expected, scheduler.estimate(docx));
+	}
+
+	@Test
+	void agreesWithTheFileEstimate(@TempDir Path dir) throws IOException {
+		byte[] docx = docx("saved by a test");
+		Path file = Files.write(dir.resolve("in.docx"), docx);
+		assertEquals(scheduler.estimate(file), scheduler.estimate(docx));
+	}
+
+	@Test
+	void findsTheEndRecordBehindAComment() throws IOException {
+		assertEquals(scheduler.estimate(docx(null)), scheduler.estimate(docx("x".repeat(1000))));
+	}
+
+	@Test
+	void sizesOtherInputAsMarkdown() {
+		byte[] markdown = "# Title\n\nSome text.\n".getBytes(StandardCharsets.UTF_8);
+		assertEquals(ConversionScheduler.BASE_COST + (long) markdown.length * ConversionScheduler.MARKDOWN_FACTOR,
+			scheduler.estimate(markdown));
+		assertEquals(ConversionScheduler.BASE_COST, scheduler.estimate(new byte[0]));
+	}
+
+	@Test
+	void survivesATruncatedDirectory() throws IOException {
+		byte[] docx = docx(null);
+		// Keep the end record but point its directory offset past it
+		byte[] broken = Arrays.copyOf(docx, docx.length);
+		int end = docx.length - 22;
+		broken[end + 16] = (byte) 0xff;
+		broken[end + 17] = (byte) 0xff;
+		broken[end + 18] = (byte) 0xff;
+		broken[end + 19] = (byte) 0x7f;
+		assertEquals(ConversionScheduler.BASE_COST + broken.length, scheduler.estimate(broken));
+		assertTrue(scheduler.estimate(Arrays.copyOf(docx, docx.length / 2)) >= ConversionScheduler.BASE_COST);
+	}
+
+	@Test
+	void countsTheBufferedInputOfWaitingJobs() throws Exception {
+		ConversionScheduler small = new ConversionScheduler(100, 0);
+		ExecutorService pool = Executors.newCachedThreadPool();
+		try {
+			Future<?> large;
+			Future<?> next;
+			try (ConversionScheduler.Permit running = small.admit(60)) {
+				// Does not fit beside the running job, but its 50 buffered bytes are already on the heap
+				large = pool.submit(() -> {
+					small.admit(50, 50).close();
+					return null;
+				});
+				awaitQueued(small, 1);
+				// Would fit beside the running job alone; not beside it and the buffered input
+				next = pool.submit(() -> {
+					small.admit(30).close();
+					return null;
+				});
+				awaitQueued(small, 2);
+				assertThrows(TimeoutException.class, () -> next.get(200, TimeUnit.MILLISECONDS));
+			}
+			next.get(5, TimeUnit.SECONDS);
+			large.get(5, TimeUnit.SECONDS);
+			assertEquals(0, small.queued());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void admitsSmallestFirst() throws Exception {
+		ConversionScheduler small = new ConversionScheduler(100, 0);
+		ExecutorService pool = Executors.newCachedThreadPool();
+		List<Long> order = Collections.synchronizedList(new ArrayList<>());
+		try {
+			List<Future<?>> jobs = new ArrayList<>();
+			try (ConversionScheduler.Permit full = small.admit(100)) {
+				// No two fit together, so they run one at a time and record in admission order
+				for (long cost : new long[]{80, 60, 70}) {
+					jobs.add(pool.submit(() -> {
+						try (ConversionScheduler.Permit permit = small.admit(cost)) {
+							order.add(cost);
+						}
+						return null;
+					}));
+					awaitQueued(small, jobs.size());
+				}
+			}
+			for (Future<?> job : jobs) {
+				job.get(5, TimeUnit.SECONDS);
+			}
+			assertEquals(List.of(60L, 70L, 80L), order);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void runsAJobLargerThanTheBudgetAlone() throws Exception {
+		ConversionScheduler small = new ConversionScheduler(100, 0);
+		ExecutorService pool = Executors.newCachedThreadPool();
+		CountDownLatch admitted = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			Future<?> huge;
+			try (ConversionScheduler.Permit running = small.admit(10)) {
+				huge = pool.submit(() -> {
+					try (ConversionScheduler.Permit permit = small.admit(500)) {
+						admitted.countDown();
+						release.await();
+					}
+					return null;
+				});
+				awaitQueued(small, 1);
+				assertFalse(admitted.await(200, TimeUnit.MILLISECONDS), "waits for the running job");
+			}
+			assertTrue(admitted.await(5, TimeUnit.SECONDS), "runs once nothing else does");
+
+			Future<?> next = pool.submit(() -> {
+				small.admit(10).close();
+				return null;
+			});
+			assertThrows(TimeoutException.class, () -> next.get(200, TimeUnit.MILLISECONDS));
+			release.countDown();
+			huge.get(5, TimeUnit.SECONDS);
+			next.get(5, TimeUnit.SECONDS);
+		} finally {
+			release.countDown();
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void leavesTheQueueAtTheDeadline() throws Exception {
+		ConversionScheduler timed = new ConversionScheduler(100, 200);
+		ExecutorService pool = Executors.newCachedThreadPool();
+		try (ConversionScheduler.Permit running = timed.admit(80)) {
+			long start = System.nanoTime();
+			Future<?> queued = pool.submit(() -> {
+				timed.admit(50).close();
+				return null;
+			});
+			ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+			assertTrue(e.getCause() instanceof InterruptedIOException, e.getCause().toString());
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+			assertEquals(0, timed.queued());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void stopsAtTheNextStageOnceThePermitsDeadlinePasses() throws Exception {
+		ConversionScheduler timed = new ConversionScheduler(100, 100);
+		try (ConversionScheduler.Permit permit = timed.admit(10)) {
+			ConversionScheduler.checkDeadline("early");
+			Thread.sleep(150);
+			assertThrows(InterruptedIOException.class, () -> ConversionScheduler.checkDeadline("late"));
+		}
+		// Closing the permit clears the deadline for whatever the thread does next
+		ConversionScheduler.checkDeadline("after");
+		assertNull(ConversionScheduler.currentDeadline());
+	}
+
+	private static void awaitQueued(ConversionScheduler scheduler, int count) throws InterruptedException {
+		long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (scheduler.queued() < count && System.nanoTime() < until) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, scheduler.queued());
+	}
+
+	private static byte[] docx(String comment) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			if (comment != null) {
+				zip.setComment(comment);
+			}
+			entry(zip, "word/document.xml", 3000);
+			entry(zip, "_rels/.rels", 200);
+			entry(zip, "word/media/image1.png", 5000);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void entry(ZipOutputStream zip, String name, int size) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		byte[] data = new byte[size];
+		Arrays.fill(data, (byte) 'a');
+		zip.write(data);
+		zip.closeEntry();
+	}
+}
@@ -0,0 +1,91 @@
+package com.example;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ImageEmbedderTest {
+
+	@Test
+	void encodesIdenticalPartsOnce() throws Exception {
+		try (OPCPackage pkg = OPCPackage.create(new ByteArrayOutputStream())) {
+			PackagePart logo = part(pkg, "/word/media/logo.png", bytes(1, 1000));
+			PackagePart copy = part(pkg, "/word/media/copy.png", bytes(1, 1000));
+			PackagePart other = part(pkg, "/word/media/other.png", bytes(2, 1000));
+			Counting pictures = new Counting();
+			ImageEmbedder embedder = new ImageEmbedder(pictures);
+
+			String uri = embedder.src(logo);
+			assertEquals("data:image/png;base64," + Base64.getEncoder().encodeToString(bytes(1, 1000)), uri);
+			assertSame(uri, embedder.src(copy));
+			assertNotEquals(uri, embedder.src(other));
+			// Every part is hashed; only the two distinct ones are encoded
+			assertEquals(2, pictures.prefixes);
+		}
+	}
+
+	@Test
+	void streamsLargePartsOnEveryReference() throws Exception {
+		try (OPCPackage pkg = OPCPackage.create(new ByteArrayOutputStream())) {
+			byte[] bytes = bytes(3, 600 * 1024);
+			PackagePart photo = part(pkg, "/word/media/photo.jpeg", bytes);
+			ImageEmbedder embedder = new ImageEmbedder();
+			String expected = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(bytes);
+			for (int i = 0; i < 2; i++) {
+				StringWriter out = new StringWriter();
+				embedder.writeSrc(photo, out);
+				assertEquals(expected, out.toString());
+			}
+		}
+	}
+
+	private static PackagePart part(OPCPackage pkg, String name, byte[] bytes) throws InvalidFormatException, IOException {
+		PackagePart part = pkg.createPart(PackagingURIHelper.createPartName(name), "image/png");
+		try (OutputStream out = part.getOutputStream()) {
+			out.write(bytes);
+		}
+		return part;
+	}
+
+	private static byte[] bytes(long seed, int length) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+
+	/** Counts how often a data URI prefix is built, which happens once per encoding. */
+	private static final class Counting implements PictureSource {
+
+		int prefixes;
+
+		@Override
+		public InputStream open(PackagePart part) throws IOException {
+			return PARTS.open(part);
+		}
+
+		@Override
+		public String extension(PackagePart part) {
+			prefixes++;
+			return PARTS.extension(part);
+		}
+
+		@Override
+		public long size(PackagePart part) {
+			return PARTS.size(part);
+		}
+	}
+}
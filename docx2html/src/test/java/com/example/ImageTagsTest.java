@@ -0,0 +1,134 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageTagsTest {
+
+	private static final byte[] SRGB = ICC_Profile.getInstance(ColorSpace.CS_sRGB).getData();
+	private static final byte[] LINEAR = ICC_Profile.getInstance(ColorSpace.CS_LINEAR_RGB).getData();
+
+	@Test
+	void tellsSrgbProfilesFromOthers() {
+		assertTrue(ImageTags.isSrgb(SRGB));
+		assertFalse(ImageTags.isSrgb(LINEAR));
+	}
+
+	@Test
+	void leavesPlainImagesAlone() throws IOException {
+		assertFalse(ImageTags.changedByReencoding(encode("jpeg")));
+		assertFalse(ImageTags.changedByReencoding(encode("png")));
+		assertFalse(ImageTags.changedByReencoding(encode("bmp")));
+	}
+
+	@Test
+	void seesAnExifOrientation() throws IOException {
+		byte[] jpeg = encode("jpeg");
+		assertTrue(ImageTags.changedByReencoding(afterSoi(jpeg, 0xe1, exif(6, false))));
+		assertTrue(ImageTags.changedByReencoding(afterSoi(jpeg, 0xe1, exif(8, true))));
+		assertFalse(ImageTags.changedByReencoding(afterSoi(jpeg, 0xe1, exif(1, false))));
+		assertTrue(ImageTags.changedByReencoding(afterIhdr(encode("png"), "eXIf", exif(3, true))));
+	}
+
+	@Test
+	void seesAProfileOtherThanSrgb() throws IOException {
+		byte[] jpeg = encode("jpeg");
+		assertFalse(ImageTags.changedByReencoding(afterSoi(jpeg, 0xe2, jpegIcc(SRGB))));
+		assertTrue(ImageTags.changedByReencoding(afterSoi(jpeg, 0xe2, jpegIcc(LINEAR))));
+
+		byte[] png = encode("png");
+		assertFalse(ImageTags.changedByReencoding(afterIhdr(png, "iCCP", pngIcc(SRGB))));
+		assertTrue(ImageTags.changedByReencoding(afterIhdr(png, "iCCP", pngIcc(LINEAR))));
+	}
+
+	@Test
+	void keepsImagesWithDamagedMetadata() throws IOException {
+		// The EXIF block stops before the directory its header points to
+		byte[] broken = afterSoi(encode("jpeg"), 0xe1, Arrays.copyOf(exif(6, false), 14));
+		assertTrue(ImageTags.changedByReencoding(broken));
+	}
+
+	private static byte[] encode(String format) throws IOException {
+		BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageIO.write(image, format, bytes);
+		return bytes.toByteArray();
+	}
+
+	/** An EXIF block whose first directory holds only an orientation. */
+	private static byte[] exif(int orientation, boolean little) {
+		ByteBuffer b = ByteBuffer.allocate(6 + 8 + 2 + 12 + 4)
+			.order(little ? java.nio.ByteOrder.LITTLE_ENDIAN : java.nio.ByteOrder.BIG_ENDIAN);
+		b.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+		b.put((byte) (little ? 'I' : 'M')).put((byte) (little ? 'I' : 'M')).putShort((short) 42).putInt(8);
+		b.putShort((short) 1);
+		b.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+		b.putInt(0);
+		return b.array();
+	}
+
+	private static byte[] jpegIcc(byte[] profile) {
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		b.writeBytes("ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII));
+		b.write(1);
+		b.write(1);
+		b.writeBytes(profile);
+		return b.toByteArray();
+	}
+
+	private static byte[] pngIcc(byte[] profile) throws IOException {
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		b.writeBytes("ICC\0".getBytes(StandardCharsets.US_ASCII));
+		b.write(0);
+		try (DeflaterOutputStream zlib = new DeflaterOutputStream(b)) {
+			zlib.write(profile);
+		}
+		return b.toByteArray();
+	}
+
+	/** {@code jpeg} with an extra segment (EXIF block for APP1 in the JPEG case) right after its start marker. */
+	private static byte[] afterSoi(byte[] jpeg, int marker, byte[] data) {
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		b.write(jpeg, 0, 2);
+		b.write(0xff);
+		b.write(marker);
+		b.write((data.length + 2) >> 8);
+		b.write(data.length + 2);
+		b.writeBytes(data);
+		b.write(jpeg, 2, jpeg.length - 2);
+		return b.toByteArray();
+	}
+
+	/** {@code png} with an extra chunk after its header chunk. EXIF chunks carry no "Exif" prefix. */
+	private static byte[] afterIhdr(byte[] png, String type, byte[] data) {
+		if (type.equals("eXIf")) {
+			data = Arrays.copyOfRange(data, 6, data.length);
+		}
+		int ihdrEnd = 8 + 8 + 13 + 4;
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+		ByteBuffer chunk = ByteBuffer.allocate(12 + data.length);
+		chunk.putInt(data.length).put(typeBytes).put(data).putInt((int) crc.getValue());
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		b.write(png, 0, ihdrEnd);
+		b.writeBytes(chunk.array());
+		b.write(png, ihdrEnd, png.length - ihdrEnd);
+		return b.toByteArray();
+	}
+}
@@ -0,0 +1,89 @@
+package com.example;
+
+import fr.opensagres.poi.xwpf.converter.xhtml.XHTMLConverter;
+import org.apache.poi.xwpf.usermodel.ParagraphAlignment;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTblGrid;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsoupDomBuilderTest {
+
+	/** The passes were written against Jsoup.parse of the serialised XHTML; the SAX-built DOM must be the same. */
+	@Test
+	void buildsWhatJsoupParses() throws IOException {
+		try (XWPFDocument document = sample()) {
+			ByteArrayOutputStream xhtml = new ByteArrayOutputStream();
+			XHTMLConverter.getInstance().convert(document, xhtml, DocxToMarkdownConverter.xhtmlOptions());
+			Document parsed = Jsoup.parse(new String(xhtml.toByteArray(), StandardCharsets.UTF_8));
+
+			JsoupDomBuilder dom = new JsoupDomBuilder();
+			((XHTMLConverter) XHTMLConverter.getInstance()).convert(document, dom, DocxToMarkdownConverter.xhtmlOptions());
+			Document built = dom.getDocument();
+
+			assertEquals(parsed.outerHtml(), built.outerHtml());
+			assertEquals(3, built.select("table > tbody > tr").size());
+		}
+	}
+
+	/** XHTMLConverter writes quotes inside attribute values unescaped, which cuts the serialised attribute short. */
+	@Test
+	void keepsQuotesInAttributes() throws IOException {
+		try (XWPFDocument document = sample()) {
+			document.getParagraphs().get(0).getRuns().get(0).setFontFamily("Times \"New\" Roman");
+			JsoupDomBuilder dom = new JsoupDomBuilder();
+			((XHTMLConverter) XHTMLConverter.getInstance()).convert(document, dom, DocxToMarkdownConverter.xhtmlOptions());
+			assertTrue(dom.getDocument().selectFirst("span").attr("style").contains("'Times \"New\" Roman'"));
+		}
+	}
+
+	/** Styles, characters that need escaping in text and attributes, and a table. */
+	private static XWPFDocument sample() throws IOException {
+		XWPFDocument document = new XWPFDocument();
+		document.createStyles();
+		XWPFParagraph title = document.createParagraph();
+		title.setAlignment(ParagraphAlignment.CENTER);
+		XWPFRun run = title.createRun();
+		run.setBold(true);
+		run.setFontSize(18);
+		run.setFontFamily("Gill Sans & Co");
+		run.setText("Q&A <draft>");
+
+		XWPFParagraph body = document.createParagraph();
+		body.createRun().setText("Fish & chips cost < £5 — \"cheap\", isn't it? ");
+		XWPFRun italic = body.createRun();
+		italic.setItalic(true);
+		italic.setText("café ½ & π");
+
+		XWPFTable table = document.createTable(3, 2);
+		CTTblGrid grid = table.getCTTbl().addNewTblGrid();
+		grid.addNewGridCol().setW(BigInteger.valueOf(2400));
+		grid.addNewGridCol().setW(BigInteger.valueOf(3600));
+		for (int r = 0; r < 3; r++) {
+			for (int c = 0; c < 2; c++) {
+				table.getRow(r).getCell(c).setText(r == 0 ? "Head " + c + " & more" : r + " < " + c);
+			}
+		}
+		document.createParagraph().createRun().setText("After the table.");
+		document.getDocument().getBody().addNewSectPr();
+
+		// Read back as the converter would see it; parts made in memory are empty until written
+		ByteArrayOutputStream docx = new ByteArrayOutputStream();
+		document.write(docx);
+		document.close();
+		return new XWPFDocument(new ByteArrayInputStream(docx.toByteArray()));
+	}
+}
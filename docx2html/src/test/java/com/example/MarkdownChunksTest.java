@@ -0,0 +1,65 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MarkdownChunksTest {
+
+	@Test
+	void keepsShortTextWhole() {
+		assertEquals(List.of("one\n\ntwo\n"), texts(MarkdownChunks.split("one\n\ntwo\n", 100)));
+	}
+
+	@Test
+	void splitsBeforeAParagraphOnceTheTargetIsReached() {
+		String markdown = "aaaa\n\nbb\n\ncccc\n\ndd\n";
+		List<MarkdownChunks.Chunk> chunks = MarkdownChunks.split(markdown, 5);
+		assertEquals(List.of("aaaa\n\n", "bb\n\ncccc\n\n", "dd\n"), texts(chunks));
+		assertEquals(List.of(0, 2, 6), chunks.stream().map(c -> c.firstLine).collect(Collectors.toList()));
+	}
+
+	@Test
+	void neverSplitsInsideAFence() {
+		String markdown = "intro\n\n```\ncode\n\nstill code\n```\n\nafter\n";
+		assertEquals(List.of("intro\n\n", "```\ncode\n\nstill code\n```\n\n", "after\n"),
+			texts(MarkdownChunks.split(markdown, 1)));
+
+		String tilde = "intro\n\n~~~~\n```\n\nstill code\n~~~~\n\nafter\n";
+		assertEquals(List.of("intro\n\n", "~~~~\n```\n\nstill code\n~~~~\n\n", "after\n"),
+			texts(MarkdownChunks.split(tilde, 1)));
+	}
+
+	@Test
+	void neverSplitsInsideMultiLineHtml() {
+		String markdown = "intro\n\n<!-- note\n\nstill comment -->\n\n<pre>\n\nraw\n</pre>\n\nafter\n";
+		assertEquals(List.of("intro\n\n", "<!-- note\n\nstill comment -->\n\n", "<pre>\n\nraw\n</pre>\n\n", "after\n"),
+			texts(MarkdownChunks.split(markdown, 1)));
+	}
+
+	@Test
+	void keepsListsAndIndentedLinesWithWhatPrecedesThem() {
+		String markdown = "intro\n\n- one\n\n- two\n\n1. three\n\n    indented\n\n\ttabbed\n\nafter\n";
+		assertEquals(List.of("intro\n\n- one\n\n- two\n\n1. three\n\n    indented\n\n\ttabbed\n\n", "after\n"),
+			texts(MarkdownChunks.split(markdown, 1)));
+	}
+
+	@Test
+	void keepsDocumentsWithLinkReferencesWhole() {
+		String markdown = "see [x][1]\n\nmore text\n\n[1]: http://example.com\n";
+		assertEquals(List.of(markdown), texts(MarkdownChunks.split(markdown, 1)));
+	}
+
+	@Test
+	void handlesCrLfAndTextWithoutFinalNewline() {
+		String markdown = "one\r\n\r\ntwo\r\n\r\nthree";
+		assertEquals(List.of("one\r\n\r\n", "two\r\n\r\n", "three"), texts(MarkdownChunks.split(markdown, 1)));
+	}
+
+	private static List<String> texts(List<MarkdownChunks.Chunk> chunks) {
+		return chunks.stream().map(c -> c.text).collect(Collectors.toList());
+	}
+}
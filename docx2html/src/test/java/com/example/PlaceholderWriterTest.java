@@ -0,0 +1,104 @@
+package com.example;
+
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PlaceholderWriterTest {
+
+	@Test
+	void replacesTokensAndKeepsTheTextAround() throws IOException {
+		assertEquals("# T\n\n<span>T0</span>\n\ntext <span>I0</span>.",
+			render(blocks("T", 1), blocks("I", 1), "# T\n\nMDPH_TABLE_0\n\ntext MDPH_IMG_0."));
+	}
+
+	@Test
+	void joinsTokensSplitAcrossWrites() throws IOException {
+		assertEquals("a <span>T0</span> b <span>I0</span>",
+			render(blocks("T", 1), blocks("I", 1), "a MDPH_TA", "BLE_", "0 b MDPH_IMG_", "0"));
+	}
+
+	@Test
+	void takesTheExpectedIndexWhenDigitsFollow() throws IOException {
+		// Table 1 written right before a literal 0 must not read as table 10
+		assertEquals("<span>T0</span> <span>T1</span>0",
+			render(blocks("T", 11), blocks("I", 0), "MDPH_TABLE_0 MDPH_TABLE_10"));
+	}
+
+	@Test
+	void readsTwoDigitIndexWhenItIsNext() throws IOException {
+		StringBuilder markdown = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i <= 10; i++) {
+			markdown.append("MDPH_TABLE_").append(i).append('\n');
+			expected.append("<span>T").append(i).append("</span>\n");
+		}
+		assertEquals(expected.toString(), render(blocks("T", 11), blocks("I", 0), markdown.toString()));
+	}
+
+	@Test
+	void fallsBackToTheLongestIndexInRange() throws IOException {
+		// Out of order, so the expected index does not match: 12 is out of range, 1 is not
+		assertEquals("<span>T1</span>2", render(blocks("T", 3), blocks("I", 0), "MDPH_TABLE_12"));
+	}
+
+	@Test
+	void readsOneDigitForALeadingZero() throws IOException {
+		assertEquals("<span>I0</span>7", render(blocks("T", 0), blocks("I", 8), "MDPH_IMG_07"));
+	}
+
+	@Test
+	void leavesUnknownAndPartialTokensAlone() throws IOException {
+		assertEquals("MDPH_TABLE_5 MDPH_TAX MDPH_IMG_ M",
+			render(blocks("T", 1), blocks("I", 0), "MDPH_TABLE_5 MDPH_TAX MDPH_IMG_ M"));
+		assertEquals("M<span>I0</span>", render(blocks("T", 0), blocks("I", 1), "MMDPH_IMG_0"));
+	}
+
+	@Test
+	void resolvesATokenAtTheEndOnClose() throws IOException {
+		assertEquals("x <span>T0</span>", render(blocks("T", 1), blocks("I", 0), "x MDPH_TABLE_", "0"));
+	}
+
+	@Test
+	void writesThePreambleOnlyBeforeText() throws IOException {
+		StringWriter out = new StringWriter();
+		new PlaceholderWriter(out, "<style/>\n", blocks("T", 0), blocks("I", 0)).close();
+		assertEquals("", out.toString());
+
+		out = new StringWriter();
+		try (PlaceholderWriter writer = new PlaceholderWriter(out, "<style/>\n", blocks("T", 0), blocks("I", 0))) {
+			writer.write("");
+			writer.write("a");
+			writer.write("b");
+		}
+		assertEquals("<style/>\nab", out.toString());
+	}
+
+	private static String render(List<Element> tables, List<Element> images, String... writes) throws IOException {
+		StringWriter out = new StringWriter();
+		try (PlaceholderWriter writer = new PlaceholderWriter(out, "", tables, images)) {
+			for (String s : writes) {
+				writer.write(s);
+			}
+		}
+		return out.toString();
+	}
+
+	private static List<Element> blocks(String prefix, int count) {
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		List<Element> blocks = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			blocks.add(new Element("span").text(prefix + i));
+		}
+		return blocks;
+	}
+}
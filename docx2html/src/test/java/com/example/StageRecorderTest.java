@@ -0,0 +1,45 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class StageRecorderTest {
+
+	private static final ConversionListener FAILING = metrics -> {
+		throw new UncheckedIOException(new IOException("disk full"));
+	};
+
+	@Test
+	void passesMetricsToTheListener() throws IOException {
+		List<ConversionMetrics> seen = new ArrayList<>();
+		StageRecorder recorder = new StageRecorder("test", "in.docx");
+		try (StageRecorder.Span span = recorder.start("load")) {
+			span.input(10);
+		}
+		recorder.report(seen::add, 10, 20, null);
+		assertEquals(1, seen.size());
+		assertEquals(1, seen.get(0).getStages().size());
+	}
+
+	@Test
+	void keepsAListenerFailureOutOfASuccessfulConversion() {
+		new StageRecorder("test", "in.docx").report(FAILING, 10, 20, null);
+	}
+
+	@Test
+	void suppressesAListenerFailureIntoTheConversionFailure() {
+		IOException failure = new IOException("corrupt input");
+		new StageRecorder("test", "in.docx").report(FAILING, 10, -1, failure);
+		assertEquals(1, failure.getSuppressed().length);
+		assertSame(UncheckedIOException.class, failure.getSuppressed()[0].getClass());
+		assertNull(failure.getCause());
+	}
+}
@@ -0,0 +1,73 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WatchConverterTest {
+
+	/** More events than a watch key queues; the rest, including a directory's creation, become one OVERFLOW. */
+	private static final int FLOOD = 600;
+
+	@Test
+	void watchesDirectoriesCreatedWhileEventsWereLost(@TempDir Path dir) throws Exception {
+		Path input = Files.createDirectory(dir.resolve("in"));
+		Path output = dir.resolve("out");
+		WatchConverter converter = new WatchConverter(new DocxToMarkdownConverter(DocxToMarkdownOptions.create()),
+			new MarkdownToDocxConverter(MarkdownToDocxOptions.create()), 1, input, output, 50);
+
+		BlockingQueue<WatchConverter.Round> rounds = new LinkedBlockingQueue<>();
+		Semaphore proceed = new Semaphore(0);
+		Thread watching = new Thread(() -> {
+			try {
+				converter.watch(round -> {
+					rounds.add(round);
+					proceed.acquireUninterruptibly();
+				});
+			} catch (Exception e) {
+				// Interrupted at the end of the test
+			}
+		});
+		watching.setDaemon(true);
+		watching.start();
+		try {
+			assertNotNull(rounds.poll(30, TimeUnit.SECONDS), "initial sync");
+
+			// The loop is held in the callback, so these pile up on the root's key
+			for (int i = 0; i < FLOOD; i++) {
+				Files.createFile(input.resolve("noise-" + i + ".txt"));
+			}
+			Path late = Files.createDirectory(input.resolve("late"));
+			write(late.resolve("a.md"));
+			proceed.release();
+			assertNotNull(rounds.poll(30, TimeUnit.SECONDS), "rescan after the overflow");
+			assertTrue(Files.exists(output.resolve("late/a.docx")));
+
+			proceed.release(Integer.MAX_VALUE / 2);
+			write(late.resolve("b.md"));
+			Path converted = output.resolve("late/b.docx");
+			long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+			while (!Files.exists(converted) && System.nanoTime() < until) {
+				Thread.sleep(50);
+			}
+			assertTrue(Files.exists(converted), "a change in a directory created during the overflow");
+		} finally {
+			watching.interrupt();
+			watching.join(10_000);
+		}
+	}
+
+	private static void write(Path markdown) throws Exception {
+		Files.write(markdown, "# Title\n\nSome text.\n".getBytes(StandardCharsets.UTF_8));
+	}
+}